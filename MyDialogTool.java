@@ -1,16 +1,30 @@
 package com.samp.ling.sampleapp.utils;
 
+import android.app.Activity;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AlertDialog;
-import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.EditText;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class MyDialogTool {
     private static final String tag = MyDialogTool.class.getSimpleName();
 
@@ -33,85 +47,865 @@ public class MyDialogTool {
     public static AlertDialog alertDialog(@NonNull Context context, Drawable icon, String title, String message, final View view,
                                           String posName, String neuName, String negName, boolean cancelable,
                                           final Handler actionHandler, final int posId, final int neuId) {
-        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(context);
+        DialogSpec dialogSpec = new DialogSpec.Builder()
+                .setIcon(icon)
+                .setTitle(title)
+                .setMessage(message)
+                .setPositiveButton(posName, posId)
+                .setNeutralButton(neuName, neuId)
+                .setNegativeButton(negName)
+                .setCancelable(cancelable)
+                .build();
+        return dialogSpec.show(context, view, actionHandler);
+    }
+
+    /**
+     * negative button, cancels
+     */
+    private static final DialogInterface.OnClickListener CANCEL_CLICK = new DialogInterface.OnClickListener() {
+        @Override
+        public void onClick(DialogInterface dialog, int which) {
+            dialog.cancel();
+        }
+    };
+
+    /**
+     * positive/neutral button with no actionHandler, only dismisses
+     */
+    private static final DialogInterface.OnClickListener DISMISS_CLICK = new DialogInterface.OnClickListener() {
+        @Override
+        public void onClick(DialogInterface dialog, int which) {
+            dialog.dismiss();
+        }
+    };
+
+    private static final DialogInterface.OnCancelListener ON_CANCEL = new DialogInterface.OnCancelListener() {
+        @Override
+        public void onCancel(DialogInterface dialog) {
+            MyLog.d(tag, "alertDialog onCancel");
+            dialog.dismiss();
+        }
+    };
+
+    private static final DialogInterface.OnDismissListener ON_DISMISS = new DialogInterface.OnDismissListener() {
+        @Override
+        public void onDismiss(DialogInterface dialog) {
+            MyLog.d(tag, "alertDialog onDismiss");
+        }
+    };
+
+    /**
+     * immutable alert dialog description, built once and shown any number of times
+     * <br>holds no Context, keep it in a static field next to the screen using it
+     * <br>cancel/dismiss/negative listeners are shared by every dialog, positive and neutral
+     * share one listener per show, and only when there is an actionHandler to tell
+     * <br>results arrive as pooled Message.obtain() messages, what = button id,
+     * obj = the EditText text when the dialog shows one
+     * <pre>
+    private static final MyDialogTool.DialogSpec DELETE_SPEC = new MyDialogTool.DialogSpec.Builder()
+            .setTitle("Delete")
+            .setMessage("Delete this item?")
+            .setPositiveButton("Delete", MSG_DELETE)
+            .setNegativeButton("Cancel")
+            .build();
+
+    DELETE_SPEC.show(context, actionHandler);
+     * </pre>
+     */
+    public static final class DialogSpec {
+        private final Drawable icon;
+        private final int iconId;
+        private final String title;
+        private final String message;
+        private final String posName;
+        private final String neuName;
+        private final String negName;
+        private final int posId;
+        private final int neuId;
+        private final boolean cancelable;
+
+        private DialogSpec(Builder builder) {
+            this.icon = builder.icon;
+            this.iconId = builder.iconId;
+            this.title = builder.title;
+            this.message = builder.message;
+            this.posName = builder.posName;
+            this.neuName = builder.neuName;
+            this.negName = builder.negName;
+            this.posId = builder.posId;
+            this.neuId = builder.neuId;
+            // nothing left to dismiss it with but the back key
+            this.cancelable = builder.cancelable || MyStrTool.isReallyEmpty(builder.negName);
+        }
+
+        public Drawable getIcon() {
+            return icon;
+        }
+
+        public int getIconId() {
+            return iconId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getPositiveName() {
+            return posName;
+        }
+
+        public String getNeutralName() {
+            return neuName;
+        }
+
+        public String getNegativeName() {
+            return negName;
+        }
+
+        public int getPositiveId() {
+            return posId;
+        }
+
+        public int getNeutralId() {
+            return neuId;
+        }
+
+        public boolean isCancelable() {
+            return cancelable;
+        }
+
+        public AlertDialog show(@NonNull Context context, Handler actionHandler) {
+            return show(context, null, actionHandler);
+        }
 
-        if (icon != null)
-            alertDialogBuilder.setIcon(icon);
+        /**
+         * @param view shown below the message, an EditText's text is sent along with the button id
+         */
+        public AlertDialog show(@NonNull Context context, View view, Handler actionHandler) {
+            return show(context, view, actionHandler, message, ON_DISMISS);
+        }
+
+        public DeferredDialog showDeferred(@NonNull Context context, Handler actionHandler) {
+            return showDeferred(context, null, actionHandler);
+        }
+
+        /**
+         * like show(), but create() and show() wait for the next idle frame (see IdleFrame),
+         * so a dialog requested mid-scroll or mid-animation does not cost that frame
+         * <br>may be called from any thread
+         */
+        public DeferredDialog showDeferred(@NonNull Context context, View view, Handler actionHandler) {
+            DeferredDialog deferredDialog = new DeferredDialog(this, context, view, actionHandler);
+            IdleFrame.post(deferredDialog);
+            return deferredDialog;
+        }
+
+        /**
+         * builder setup, create() and show() times go to DialogMetrics
+         */
+        private AlertDialog show(Context context, View view, Handler actionHandler, String message,
+                                 DialogInterface.OnDismissListener onDismiss) {
+            long start = System.nanoTime();
+            AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(context);
+
+            if (icon != null) {
+                alertDialogBuilder.setIcon(icon);
+            } else if (iconId != 0) {
+                alertDialogBuilder.setIcon(iconId);
+            }
 
-        if (!MyStrTool.isReallyEmpty(title))
-            alertDialogBuilder.setTitle(title);
+            if (!MyStrTool.isReallyEmpty(title))
+                alertDialogBuilder.setTitle(title);
 
-        if (!MyStrTool.isReallyEmpty(message))
-            alertDialogBuilder.setMessage(message);
+            if (!MyStrTool.isReallyEmpty(message))
+                alertDialogBuilder.setMessage(message);
 
-        if (view != null)
-            alertDialogBuilder.setView(view);
+            if (view != null)
+                alertDialogBuilder.setView(view);
 
-        if (!MyStrTool.isReallyEmpty(posName))
-            alertDialogBuilder.setPositiveButton(posName, new DialogInterface.OnClickListener() {
-                @Override
-                public void onClick(DialogInterface dialog, int which) {
-                    if (actionHandler != null) {
-                        Message message = new Message();
-                        message.what = posId;
-                        if (view instanceof EditText) {
-                            message.obj = ((EditText) view).getText().toString();
+            boolean hasPos = !MyStrTool.isReallyEmpty(posName);
+            boolean hasNeu = !MyStrTool.isReallyEmpty(neuName);
+            DialogInterface.OnClickListener actionClick = DISMISS_CLICK;
+            if (actionHandler != null && (hasPos || hasNeu)) {
+                actionClick = new ActionClick(this, actionHandler, view);
+            }
+
+            if (hasPos)
+                alertDialogBuilder.setPositiveButton(posName, actionClick);
+
+            if (hasNeu)
+                alertDialogBuilder.setNeutralButton(neuName, actionClick);
+
+            if (!MyStrTool.isReallyEmpty(negName))
+                alertDialogBuilder.setNegativeButton(negName, CANCEL_CLICK);
+
+            alertDialogBuilder.setCancelable(cancelable);
+            alertDialogBuilder.setOnCancelListener(ON_CANCEL);
+            alertDialogBuilder.setOnDismissListener(onDismiss);
+
+            long setUp = System.nanoTime();
+            AlertDialog alertDialog = alertDialogBuilder.create();
+            long created = System.nanoTime();
+
+            alertDialog.show();
+
+            DialogMetrics.getDefault().recordShow(setUp - start, created - setUp, System.nanoTime() - created);
+            return alertDialog;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DialogSpec)) return false;
+
+            DialogSpec that = (DialogSpec) o;
+            return icon == that.icon && iconId == that.iconId && posId == that.posId && neuId == that.neuId
+                    && cancelable == that.cancelable && equal(title, that.title) && equal(message, that.message)
+                    && equal(posName, that.posName) && equal(neuName, that.neuName) && equal(negName, that.negName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = iconId;
+            result = 31 * result + (title != null ? title.hashCode() : 0);
+            result = 31 * result + (message != null ? message.hashCode() : 0);
+            result = 31 * result + (posName != null ? posName.hashCode() : 0);
+            result = 31 * result + posId;
+            result = 31 * result + (neuName != null ? neuName.hashCode() : 0);
+            result = 31 * result + neuId;
+            return result;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public String toString() {
+            return "DialogSpec{" + title + ", " + posName + "/" + posId + ", " + neuName + "/" + neuId
+                    + ", " + negName + ", cancelable " + cancelable + "}";
+        }
+
+        public static final class Builder {
+            private Drawable icon;
+            private int iconId;
+            private String title;
+            private String message;
+            private String posName;
+            private String neuName;
+            private String negName;
+            private int posId = -1;
+            private int neuId = -1;
+            private boolean cancelable = true;
+
+            public Builder() {
+            }
+
+            /**
+             * a Drawable draws for one view at a time, prefer setIcon(int) for specs kept around
+             */
+            public Builder setIcon(Drawable icon) {
+                this.icon = icon;
+                return this;
+            }
+
+            public Builder setIcon(int iconId) {
+                this.iconId = iconId;
+                return this;
+            }
+
+            public Builder setTitle(String title) {
+                this.title = title;
+                return this;
+            }
+
+            public Builder setMessage(String message) {
+                this.message = message;
+                return this;
+            }
+
+            public Builder setPositiveButton(String posName, int posId) {
+                this.posName = posName;
+                this.posId = posId;
+                return this;
+            }
+
+            public Builder setNeutralButton(String neuName, int neuId) {
+                this.neuName = neuName;
+                this.neuId = neuId;
+                return this;
+            }
+
+            public Builder setNegativeButton(String negName) {
+                this.negName = negName;
+                return this;
+            }
+
+            public Builder setCancelable(boolean cancelable) {
+                this.cancelable = cancelable;
+                return this;
+            }
+
+            public DialogSpec build() {
+                return new DialogSpec(this);
+            }
+        }
+    }
+
+    /**
+     * queues dialogs instead of showing them right away, for bursts of the same message
+     * (e.g. every request failing after connectivity is lost)
+     * <br>identical specs, or specs scheduled with the same key, collapse into one dialog
+     * whose message ends with the count " (x3)", a visible one is updated in place
+     * <br>at most one visible dialog per priority, the next one waits for its dismiss
+     * (or for its activity to finish)
+     * <br>shows are at least getMinInterval() apart, a burst arriving within it inflates one dialog
+     * <br>schedule() may be called from any thread, dialogs are shown on the main thread
+     * <pre>
+    MyDialogTool.DialogScheduler.getDefault().schedule(activity, ERROR_SPEC, null);
+    MyDialogTool.DialogScheduler.getDefault().schedule(activity, spec, "network",
+            MyDialogTool.DialogScheduler.PRIORITY_HIGH, actionHandler);
+     * </pre>
+     */
+    public static final class DialogScheduler {
+        public static final int PRIORITY_NORMAL = 0;
+        public static final int PRIORITY_HIGH = 1;
+
+        public static final long DEFAULT_MIN_INTERVAL_MILLIS = 500;
+
+        private static final DialogScheduler DEFAULT = new DialogScheduler();
+
+        // key (String or DialogSpec) -> waiting, in arrival order
+        private final Map<Object, Scheduled> pending = new LinkedHashMap<>();
+        // priority -> showing
+        private final Map<Integer, Scheduled> visible = new HashMap<>();
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final Runnable flushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+        private final DialogInterface.OnDismissListener onDismiss = new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                ON_DISMISS.onDismiss(dialog);
+                dismissed(dialog);
+            }
+        };
+
+        private volatile long minIntervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+        private volatile boolean deferred;
+        private long lastShowAt = -DEFAULT_MIN_INTERVAL_MILLIS;
+        private boolean flushPosted;
+        private long flushAt;
+
+        public static DialogScheduler getDefault() {
+            return DEFAULT;
+        }
+
+        private DialogScheduler() {
+        }
+
+        public long getMinInterval() {
+            return minIntervalMillis;
+        }
+
+        public void setMinInterval(long minIntervalMillis) {
+            if (minIntervalMillis < 0) {
+                throw new IllegalArgumentException("invalid minIntervalMillis");
+            }
+            this.minIntervalMillis = minIntervalMillis;
+        }
+
+        public boolean isDeferred() {
+            return deferred;
+        }
+
+        /**
+         * true: a dialog due is created and shown at the next idle frame (see IdleFrame)
+         * instead of straight from the flush
+         */
+        public void setDeferred(boolean deferred) {
+            this.deferred = deferred;
+        }
+
+        public void schedule(@NonNull Context context, @NonNull DialogSpec dialogSpec, Handler actionHandler) {
+            schedule(context, dialogSpec, null, PRIORITY_NORMAL, actionHandler);
+        }
+
+        /**
+         * @param key collapses different specs into one, the latest spec wins,
+         *            null: only identical specs collapse
+         */
+        public void schedule(@NonNull Context context, @NonNull DialogSpec dialogSpec, String key, int priority,
+                             Handler actionHandler) {
+            if (dialogSpec == null) {
+                throw new IllegalArgumentException("invalid dialogSpec");
+            }
+
+            Object scheduledKey = key != null ? key : dialogSpec;
+            synchronized (this) {
+                Scheduled scheduled = pending.get(scheduledKey);
+                if (scheduled == null) {
+                    Scheduled showing = visible.get(priority);
+                    if (showing != null && showing.key.equals(scheduledKey)) {
+                        showing.count++;
+                        MyLog.d(tag, "scheduler joins visible x{}", showing.count);
+                        postFlush(0);
+                        return;
+                    }
+                    scheduled = new Scheduled(this, scheduledKey, priority);
+                    pending.put(scheduledKey, scheduled);
+                }
+                // latest screen and spec win
+                scheduled.dialogSpec = dialogSpec;
+                scheduled.contextRef = new WeakReference<>(context);
+                scheduled.actionHandler = actionHandler;
+                scheduled.count++;
+                postFlush(0);
+            }
+        }
+
+        /**
+         * drops everything waiting, visible dialogs stay
+         */
+        public synchronized void clear() {
+            pending.clear();
+        }
+
+        public synchronized int getPendingCount() {
+            return pending.size();
+        }
+
+        private void postFlush(long delayMillis) {
+            long flushAt = SystemClock.uptimeMillis() + delayMillis;
+            if (flushPosted) {
+                if (this.flushAt <= flushAt) return;
+                // a count refresh does not wait for the rate limit
+                handler.removeCallbacks(flushRunnable);
+            }
+
+            flushPosted = true;
+            this.flushAt = flushAt;
+            handler.postDelayed(flushRunnable, delayMillis);
+        }
+
+        /**
+         * main thread: refreshes visible counts, shows at most one waiting dialog
+         */
+        private void flush() {
+            Scheduled toShow = null;
+            List<Scheduled> toRefresh = null;
+            List<AlertDialog> toDismiss = null;
+            synchronized (this) {
+                flushPosted = false;
+                for (Iterator<Scheduled> iterator = visible.values().iterator(); iterator.hasNext(); ) {
+                    Scheduled showing = iterator.next();
+                    AlertDialog alertDialog = showing.alertDialog;
+                    // its activity went away without a dismiss (leaked window), or it is gone already
+                    if (!isAlive(showing.contextRef.get()) || (alertDialog != null && !alertDialog.isShowing())) {
+                        iterator.remove();
+                        if (alertDialog != null) {
+                            if (toDismiss == null) toDismiss = new ArrayList<>();
+                            toDismiss.add(alertDialog);
                         }
-                        actionHandler.sendMessage(message);
+                        continue;
+                    }
+                    if (showing.count != showing.shownCount) {
+                        if (toRefresh == null) toRefresh = new ArrayList<>();
+                        toRefresh.add(showing);
                     }
-                    dialog.dismiss();
                 }
-            });
-
-        if (!MyStrTool.isReallyEmpty(neuName))
-            alertDialogBuilder.setNeutralButton(neuName, new DialogInterface.OnClickListener() {
-                @Override
-                public void onClick(DialogInterface dialog, int which) {
-                    if (actionHandler != null) {
-                        Message message = new Message();
-                        message.what = neuId;
-                        if (view instanceof EditText) {
-                            message.obj = ((EditText) view).getText().toString();
+
+                long now = SystemClock.uptimeMillis();
+                long wait = lastShowAt + minIntervalMillis - now;
+                for (Iterator<Scheduled> iterator = pending.values().iterator(); iterator.hasNext(); ) {
+                    Scheduled scheduled = iterator.next();
+                    if (scheduled.contextRef.get() == null) {
+                        iterator.remove();
+                    } else if (!visible.containsKey(scheduled.priority)) {
+                        if (wait > 0) {
+                            postFlush(wait);
+                            break;
                         }
-                        actionHandler.sendMessage(message);
+                        iterator.remove();
+                        visible.put(scheduled.priority, scheduled);
+                        lastShowAt = now;
+                        toShow = scheduled;
+                        break;
                     }
-                    dialog.dismiss();
                 }
-            });
+                if (toShow != null && !pending.isEmpty()) {
+                    postFlush(minIntervalMillis);
+                }
+            }
 
-        if (!MyStrTool.isReallyEmpty(negName)) {
-            alertDialogBuilder.setNegativeButton(negName, new DialogInterface.OnClickListener() {
-                @Override
-                public void onClick(DialogInterface dialog, int which) {
-                    dialog.cancel();
+            if (toDismiss != null) {
+                for (AlertDialog alertDialog : toDismiss) {
+                    alertDialog.dismiss();
                 }
-            });
-        } else {
-            if (!cancelable) cancelable = true;
+            }
+            if (toRefresh != null) {
+                for (Scheduled showing : toRefresh) {
+                    showing.refresh();
+                }
+            }
+            if (toShow != null) {
+                if (deferred) {
+                    toShow.deferredAt = System.nanoTime();
+                    IdleFrame.post(toShow);
+                } else {
+                    toShow.run();
+                }
+            }
+        }
+
+        /**
+         * main thread, the visible slot goes to the next one
+         */
+        private synchronized void notShown(Scheduled scheduled) {
+            if (visible.get(scheduled.priority) == scheduled) {
+                visible.remove(scheduled.priority);
+                postFlush(0);
+            }
+        }
+
+        private void dismissed(DialogInterface dialog) {
+            synchronized (this) {
+                for (Iterator<Scheduled> iterator = visible.values().iterator(); iterator.hasNext(); ) {
+                    if (iterator.next().alertDialog == dialog) {
+                        iterator.remove();
+                        if (!pending.isEmpty()) postFlush(0);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * one DialogScheduler entry, waiting or visible, guarded by the scheduler
+     */
+    private static final class Scheduled implements Runnable {
+        final DialogScheduler dialogScheduler;
+        final Object key;
+        final int priority;
+        DialogSpec dialogSpec;
+        WeakReference<Context> contextRef;
+        Handler actionHandler;
+        // written under the scheduler lock, read by show()/refresh() on the main thread
+        volatile int count;
+        // main thread only
+        int shownCount;
+        long deferredAt;
+        AlertDialog alertDialog;
+
+        Scheduled(DialogScheduler dialogScheduler, Object key, int priority) {
+            this.dialogScheduler = dialogScheduler;
+            this.key = key;
+            this.priority = priority;
+        }
+
+        /**
+         * main thread, straight from the flush or at the idle frame
+         */
+        @Override
+        public void run() {
+            Context context = contextRef.get();
+            if (!isAlive(context)) {
+                dialogScheduler.notShown(this);
+                return;
+            }
+
+            if (deferredAt != 0) {
+                DialogMetrics.getDefault().record(DialogMetrics.WAIT, System.nanoTime() - deferredAt);
+            }
+            shownCount = count;
+            alertDialog = dialogSpec.show(context, null, actionHandler, counted(dialogSpec.getMessage(), shownCount),
+                    dialogScheduler.onDismiss);
+        }
+
+        void refresh() {
+            shownCount = count;
+            if (alertDialog != null) {
+                alertDialog.setMessage(counted(dialogSpec.getMessage(), shownCount));
+            }
+        }
+
+        private static String counted(String message, int count) {
+            if (count <= 1) return message;
+
+            String suffix = "(x" + count + ")";
+            return MyStrTool.isReallyEmpty(message) ? suffix : message + " " + suffix;
+        }
+    }
+
+    private static boolean isAlive(Context context) {
+        return context != null && !(context instanceof Activity && ((Activity) context).isFinishing());
+    }
+
+    /**
+     * a DialogSpec.showDeferred() waiting for its idle frame
+     */
+    public static final class DeferredDialog implements Runnable {
+        private final DialogSpec dialogSpec;
+        private final WeakReference<Context> contextRef;
+        private final View view;
+        private final Handler actionHandler;
+        private final long requestedAt = System.nanoTime();
+        private volatile boolean cancelled;
+        private volatile AlertDialog alertDialog;
+
+        private DeferredDialog(DialogSpec dialogSpec, Context context, View view, Handler actionHandler) {
+            this.dialogSpec = dialogSpec;
+            this.contextRef = new WeakReference<>(context);
+            this.view = view;
+            this.actionHandler = actionHandler;
+        }
+
+        /**
+         * null until shown
+         */
+        public AlertDialog getAlertDialog() {
+            return alertDialog;
+        }
+
+        /**
+         * before the idle frame: never shown, after: dismisses it
+         * <br>runs on the main thread, like run(), so the two can't interleave
+         */
+        public void cancel() {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                cancelNow();
+            } else {
+                IdleFrame.handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cancelNow();
+                    }
+                });
+            }
+        }
+
+        private void cancelNow() {
+            cancelled = true;
+            IdleFrame.remove(this);
+            AlertDialog shown = alertDialog;
+            if (shown != null) shown.dismiss();
         }
 
-        alertDialogBuilder.setCancelable(cancelable);
+        @Override
+        public void run() {
+            Context context = contextRef.get();
+            if (cancelled || !isAlive(context)) return;
 
-        alertDialogBuilder.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            DialogMetrics.getDefault().record(DialogMetrics.WAIT, System.nanoTime() - requestedAt);
+            alertDialog = dialogSpec.show(context, view, actionHandler, dialogSpec.getMessage(), ON_DISMISS);
+        }
+    }
+
+    /**
+     * runs main thread work once the next frame is done: a Choreographer frame callback
+     * arms a MessageQueue.IdleHandler, so the work lands after that frame's input,
+     * animation and traversal, when the queue has nothing left to do
+     * <br>one Runnable per idle frame, the rest wait for the following frames
+     */
+    static final class IdleFrame {
+        private static final List<Runnable> queue = new ArrayList<>();
+        private static final Handler handler = new Handler(Looper.getMainLooper());
+        private static boolean armed;
+
+        private static final MessageQueue.IdleHandler IDLE_HANDLER = new MessageQueue.IdleHandler() {
             @Override
-            public void onCancel(DialogInterface dialog) {
-                Log.d(tag, "alertDialog onCancel");
-                dialog.dismiss();
+            public boolean queueIdle() {
+                Runnable runnable;
+                synchronized (IdleFrame.class) {
+                    armed = false;
+                    if (queue.isEmpty()) return false;
+
+                    runnable = queue.remove(0);
+                    if (!queue.isEmpty()) arm();
+                }
+                runnable.run();
+                return false;
             }
-        });
+        };
 
-        alertDialogBuilder.setOnDismissListener(new DialogInterface.OnDismissListener() {
+        private static final Choreographer.FrameCallback FRAME_CALLBACK = new Choreographer.FrameCallback() {
             @Override
-            public void onDismiss(DialogInterface dialog) {
-                Log.d(tag, "alertDialog onDismiss");
+            public void doFrame(long frameTimeNanos) {
+                // idle only after this frame has been drawn
+                Looper.myQueue().addIdleHandler(IDLE_HANDLER);
             }
-        });
+        };
 
-        AlertDialog alertDialog = alertDialogBuilder.create();
+        private static final Runnable ARM = new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(FRAME_CALLBACK);
+            }
+        };
+
+        private IdleFrame() {
+        }
 
-        alertDialog.show();
+        static synchronized void post(Runnable runnable) {
+            queue.add(runnable);
+            if (!armed) arm();
+        }
 
-        return alertDialog;
+        static synchronized void remove(Runnable runnable) {
+            queue.remove(runnable);
+        }
+
+        private static void arm() {
+            armed = true;
+            // Choreographer belongs to the main thread
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                ARM.run();
+            } else {
+                handler.post(ARM);
+            }
+        }
+    }
+
+    /**
+     * main thread time spent presenting dialogs, per phase:
+     * SETUP (AlertDialog.Builder calls), CREATE (create()), SHOW (show()), MAIN_THREAD (all three),
+     * plus WAIT (showDeferred or deferred DialogScheduler: requested to presented)
+     * <br>one MyHistogram per phase, recording is lock-free and allocation-free, always on
+     * <pre>
+    MyDialogTool.DialogMetrics dialogMetrics = MyDialogTool.DialogMetrics.getDefault();
+    long p99 = dialogMetrics.getQuantileNanos(MyDialogTool.DialogMetrics.MAIN_THREAD, 0.99);
+    long janky = dialogMetrics.getOverFrameBudgetCount();
+     * </pre>
+     */
+    public static final class DialogMetrics {
+        public static final int SETUP = 0;
+        public static final int CREATE = 1;
+        public static final int SHOW = 2;
+        public static final int MAIN_THREAD = 3;
+        public static final int WAIT = 4;
+        public static final long NO_TIME = MyHistogram.NONE;
+
+        // one 60Hz frame
+        public static final long FRAME_BUDGET_NANOS = 16666667;
+
+        private static final String[] PHASE_NAMES = {"setup", "create", "show", "main", "wait"};
+
+        private static final DialogMetrics DEFAULT = new DialogMetrics();
+
+        private final MyHistogram[] phases = new MyHistogram[PHASE_NAMES.length];
+        private final AtomicLong overFrameBudget = new AtomicLong();
+
+        public static DialogMetrics getDefault() {
+            return DEFAULT;
+        }
+
+        private DialogMetrics() {
+            for (int phase = 0; phase < phases.length; phase++) {
+                phases[phase] = new MyHistogram();
+            }
+        }
+
+        void recordShow(long setupNanos, long createNanos, long showNanos) {
+            long mainThreadNanos = setupNanos + createNanos + showNanos;
+            phases[SETUP].record(setupNanos);
+            phases[CREATE].record(createNanos);
+            phases[SHOW].record(showNanos);
+            phases[MAIN_THREAD].record(mainThreadNanos);
+            if (mainThreadNanos > FRAME_BUDGET_NANOS) {
+                overFrameBudget.incrementAndGet();
+            }
+        }
+
+        void record(int phase, long nanos) {
+            phases[phase].record(nanos);
+        }
+
+        public long getCount(int phase) {
+            return histogram(phase).getCount();
+        }
+
+        /**
+         * dialogs whose SETUP + CREATE + SHOW took longer than FRAME_BUDGET_NANOS
+         */
+        public long getOverFrameBudgetCount() {
+            return overFrameBudget.get();
+        }
+
+        /**
+         * see MyHistogram.getBuckets()
+         */
+        public long[] getBuckets(int phase) {
+            return histogram(phase).getBuckets();
+        }
+
+        /**
+         * see MyHistogram.quantileNanos(), NO_TIME if nothing recorded
+         */
+        public long getQuantileNanos(int phase, double quantile) {
+            return histogram(phase).getQuantileNanos(quantile);
+        }
+
+        public void reset() {
+            for (MyHistogram histogram : phases) {
+                histogram.reset();
+            }
+            overFrameBudget.set(0);
+        }
+
+        private MyHistogram histogram(int phase) {
+            if (phase < 0 || phase >= phases.length) {
+                throw new IllegalArgumentException("invalid phase");
+            }
+            return phases[phase];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder stringBuilder = new StringBuilder("DialogMetrics{");
+            for (int phase = 0; phase < phases.length; phase++) {
+                stringBuilder.append(PHASE_NAMES[phase])
+                        .append(" x").append(getCount(phase))
+                        .append(" p50 ").append(micros(getQuantileNanos(phase, 0.5)))
+                        .append(" p99 ").append(micros(getQuantileNanos(phase, 0.99)))
+                        .append(", ");
+            }
+            return stringBuilder.append("over frame budget x").append(getOverFrameBudgetCount()).append("}").toString();
+        }
+
+        private static String micros(long nanos) {
+            return nanos == NO_TIME ? "-" : TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+        }
+    }
+
+    /**
+     * positive and neutral buttons of one shown dialog, tells actionHandler which one was hit
+     */
+    private static final class ActionClick implements DialogInterface.OnClickListener {
+        private final DialogSpec dialogSpec;
+        private final Handler actionHandler;
+        private final View view;
+
+        ActionClick(DialogSpec dialogSpec, Handler actionHandler, View view) {
+            this.dialogSpec = dialogSpec;
+            this.actionHandler = actionHandler;
+            this.view = view;
+        }
+
+        @Override
+        public void onClick(DialogInterface dialog, int which) {
+            int what = which == DialogInterface.BUTTON_NEUTRAL ? dialogSpec.neuId : dialogSpec.posId;
+            Object obj = view instanceof EditText ? ((EditText) view).getText().toString() : null;
+            Message.obtain(actionHandler, what, obj).sendToTarget();
+            dialog.dismiss();
+        }
     }
 
 }
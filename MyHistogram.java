@@ -0,0 +1,82 @@
+package com.samp.ling.sampleapp.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * fixed size duration histogram, buckets are powers of two in microseconds:
+ * [0, 2us), [2us, 4us), [4us, 8us) ... the last one is open ended (~36min and above)
+ * recording is lock-free and allocation-free
+ * used by MyNetProbe.ProbeMetrics (probe latency) and MyDialogTool.DialogMetrics (main thread time)
+ * </pre>
+ */
+public final class MyHistogram {
+    public static final int BUCKETS = 32;
+    public static final long NONE = -1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 63 - Long.numberOfLeadingZeros(micros);
+        if (bucket < 0) return 0;
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * copy of the counts, bucket i holds durations below 2^(i+1) microseconds
+     */
+    public long[] getBuckets() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = counts.get(i);
+        }
+        return buckets;
+    }
+
+    public long getQuantileNanos(double quantile) {
+        return quantileNanos(getBuckets(), quantile);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * upper bound of the bucket holding the given quantile (0.5 = p50, 0.99 = p99),
+     * NONE if nothing recorded
+     * @param buckets as returned by getBuckets()
+     */
+    public static long quantileNanos(long[] buckets, double quantile) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        if (total == 0) return NONE;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return TimeUnit.MICROSECONDS.toNanos(1L << (i + 1));
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
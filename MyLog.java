@@ -0,0 +1,121 @@
+package com.samp.ling.sampleapp.utils;
+
+import android.util.Log;
+
+import com.samp.ling.sampleapp.BuildConfig;
+
+/**
+ * <pre>
+ * logging facade for the My* utilities, over android.util.Log
+ * build-time gate: ENABLED, BuildConfig.DEBUG, so release builds turn it off on their own,
+ * every call is then empty and guarded sites are dead code, removed by R8 (minifyEnabled)
+ * or already by javac where BuildConfig.DEBUG is a constant:
+    if (MyLog.ENABLED && MyLog.isLoggable(MyLog.INFO)) {
+        MyLog.i(TAG, "checkSelf {} Granted:{}", getPermissionName(permission), granted);
+    }
+ * runtime gate: setLevel(), anything below the level returns before formatting
+ * messages are parameterized, "{}" placeholders are only filled in when logged,
+ * so a call below the level allocates nothing (boolean and small int arguments
+ * box to cached instances, guard sites computing their arguments as above)
+ * </pre>
+ */
+public final class MyLog {
+    // false in release builds
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    private static final String PLACEHOLDER = "{}";
+
+    private static volatile int level = DEBUG;
+
+    private MyLog() {
+    }
+
+    /**
+     * lowest priority logged, e.g. MyLog.WARN in field builds
+     */
+    public static void setLevel(int priority) {
+        level = priority;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return ENABLED && priority >= level;
+    }
+
+    public static void d(String tag, String message) {
+        if (ENABLED && DEBUG >= level) log(DEBUG, tag, message, null, null, null);
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (ENABLED && DEBUG >= level) log(DEBUG, tag, format, arg, null, null);
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (ENABLED && DEBUG >= level) log(DEBUG, tag, format, arg1, arg2, null);
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (ENABLED && DEBUG >= level) log(DEBUG, tag, format, arg1, arg2, arg3);
+    }
+
+    public static void i(String tag, String message) {
+        if (ENABLED && INFO >= level) log(INFO, tag, message, null, null, null);
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (ENABLED && INFO >= level) log(INFO, tag, format, arg, null, null);
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (ENABLED && INFO >= level) log(INFO, tag, format, arg1, arg2, null);
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (ENABLED && INFO >= level) log(INFO, tag, format, arg1, arg2, arg3);
+    }
+
+    public static void w(String tag, String message) {
+        if (ENABLED && WARN >= level) log(WARN, tag, message, null, null, null);
+    }
+
+    public static void w(String tag, String format, Object arg) {
+        if (ENABLED && WARN >= level) log(WARN, tag, format, arg, null, null);
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (ENABLED && WARN >= level) log(WARN, tag, format, arg1, arg2, null);
+    }
+
+    private static void log(int priority, String tag, String format, Object arg1, Object arg2, Object arg3) {
+        Log.println(priority, tag, format(format, arg1, arg2, arg3));
+    }
+
+    /**
+     * fills "{}" placeholders in order, extra placeholders are left as they are
+     */
+    static String format(String format, Object arg1, Object arg2, Object arg3) {
+        int index = format.indexOf(PLACEHOLDER);
+        if (index == -1) return format;
+
+        StringBuilder stringBuilder = new StringBuilder(format.length() + 32);
+        int start = 0;
+        int argIndex = 0;
+        while (index != -1 && argIndex < 3) {
+            Object arg = argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3;
+            stringBuilder.append(format, start, index).append(arg);
+            start = index + PLACEHOLDER.length();
+            argIndex++;
+            index = format.indexOf(PLACEHOLDER, start);
+        }
+        return stringBuilder.append(format, start, format.length()).toString();
+    }
+}
@@ -0,0 +1,1611 @@
+package com.samp.ling.sampleapp.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * URL reachability probing, plain java (java.net and java.util.concurrent only),
+ * so it runs, and can be tested or benchmarked, outside of Android
+ * MyNetTool.HostAvailabilityTask is the AsyncTask adapter over ProbeEngine
+ * probes run on any Executor, e.g. on a JVM one virtual thread per probe:
+    ProbeEngine probeEngine = new ProbeEngine(8, 5000, ProbeMode.HEAD, 1000, 1000,
+            ReachabilityCache.getDefault(), Executors.newVirtualThreadPerTaskExecutor());
+    List&lt;UrlResult&gt; urlResults = probeEngine.check("https://www.google.com/");
+ * </pre>
+ */
+public class MyNetProbe {
+
+    /**
+     * result of probing one URL
+     * <br>TRUE if reachable
+     * <br>FALSE if not reachable (or not answered before the deadline)
+     * <br>NULL if URL is malformed
+     */
+    public static class UrlResult {
+        public static final int NONE = -1;
+
+        private String url;
+        private Boolean result;
+        private int statusCode = NONE;
+        private long connectNanos = NONE;
+        private long firstByteNanos = NONE;
+        private boolean cached;
+
+        UrlResult(String url, Boolean result) {
+            this.url = url;
+            this.result = result;
+        }
+
+        /**
+         * copy, for subclasses standing in for this type (MyNetTool.HostAvailabilityTask.UrlResult)
+         */
+        protected UrlResult(UrlResult other) {
+            this.url = other.url;
+            this.result = other.result;
+            this.statusCode = other.statusCode;
+            this.connectNanos = other.connectNanos;
+            this.firstByteNanos = other.firstByteNanos;
+            this.cached = other.cached;
+        }
+
+        public Boolean getResult() {
+            return result;
+        }
+
+        /**
+         * HTTP status code, NONE if no response (or ProbeMode.TCP)
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * time from probe start until connected, NONE if not connected
+         */
+        public long getConnectNanos() {
+            return connectNanos;
+        }
+
+        /**
+         * time from probe start until response headers, NONE if no response (or ProbeMode.TCP)
+         */
+        public long getFirstByteNanos() {
+            return firstByteNanos;
+        }
+
+        /**
+         * TRUE if answered by ReachabilityCache instead of the network
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        private void setResult(Boolean result) {
+            this.result = result;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        private UrlResult copyFor(String url) {
+            UrlResult copy = new UrlResult(url, result);
+            copy.statusCode = statusCode;
+            copy.connectNanos = connectNanos;
+            copy.firstByteNanos = firstByteNanos;
+            return copy;
+        }
+    }
+
+    /**
+     * how a single URL is probed, each with its own default timeouts
+     * <br>GET: plain request, as in the original HostAvailabilityTask (body is never read)
+     * <br>HEAD: HTTP HEAD, no body is sent back by the server
+     * <br>TCP: TCP connect to the URL's host and port only, no HTTP at all
+     * <br>NIO: same as TCP, but all connects of a check share one thread and one Selector
+     * (concurrency is ignored), for long host lists, see SelectorProbe
+     */
+    public enum ProbeMode {
+        GET(1000, 1000),
+        HEAD(1000, 1000),
+        TCP(1000, 0),
+        NIO(1000, 0);
+
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+
+        ProbeMode(int connectTimeoutMillis, int readTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public int getReadTimeoutMillis() {
+            return readTimeoutMillis;
+        }
+    }
+
+    /**
+     * probes URL(s) in parallel with a limit on probes in flight
+     * and an overall deadline for the whole list
+     * <br>results keep the input order, probes still running at the deadline
+     * are aborted and reported as FALSE
+     * <br>total time is bounded by the slowest host (or the deadline),
+     * not the sum of all hosts
+     */
+    public static class ProbeEngine {
+        public static final int DEFAULT_CONCURRENCY = 8;
+        public static final long DEFAULT_DEADLINE_MILLIS = 5000;
+        public static final ProbeMode DEFAULT_MODE = ProbeMode.GET;
+
+        private final int concurrency;
+        private final long deadlineMillis;
+        private final ProbeMode mode;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+        private final ReachabilityCache cache;
+        private final Executor executor;
+
+        public ProbeEngine() {
+            this(DEFAULT_CONCURRENCY, DEFAULT_DEADLINE_MILLIS);
+        }
+
+        public ProbeEngine(int concurrency, long deadlineMillis) {
+            this(concurrency, deadlineMillis, DEFAULT_MODE);
+        }
+
+        public ProbeEngine(int concurrency, long deadlineMillis, ProbeMode mode) {
+            this(concurrency, deadlineMillis, mode,
+                    mode.getConnectTimeoutMillis(), mode.getReadTimeoutMillis());
+        }
+
+        public ProbeEngine(int concurrency, long deadlineMillis, ProbeMode mode,
+                           int connectTimeoutMillis, int readTimeoutMillis) {
+            this(concurrency, deadlineMillis, mode, connectTimeoutMillis, readTimeoutMillis,
+                    ReachabilityCache.getDefault());
+        }
+
+        /**
+         * @param cache results cache, NULL to always probe
+         */
+        public ProbeEngine(int concurrency, long deadlineMillis, ProbeMode mode,
+                           int connectTimeoutMillis, int readTimeoutMillis, ReachabilityCache cache) {
+            this(concurrency, deadlineMillis, mode, connectTimeoutMillis, readTimeoutMillis, cache,
+                    DefaultExecutorHolder.EXECUTOR);
+        }
+
+        /**
+         * @param cache results cache, NULL to always probe
+         * @param executor runs the probes, never more than concurrency at a time (one for ProbeMode.NIO)
+         */
+        public ProbeEngine(int concurrency, long deadlineMillis, ProbeMode mode,
+                           int connectTimeoutMillis, int readTimeoutMillis, ReachabilityCache cache,
+                           Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("invalid executor");
+            }
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("invalid concurrency");
+            }
+            if (deadlineMillis <= 0) {
+                throw new IllegalArgumentException("invalid deadline");
+            }
+            if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+                throw new IllegalArgumentException("invalid timeout");
+            }
+            this.concurrency = concurrency;
+            this.deadlineMillis = deadlineMillis;
+            this.mode = mode;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.cache = cache;
+            this.executor = executor;
+        }
+
+        public ProbeMode getMode() {
+            return mode;
+        }
+
+        /**
+         * shared by engines not given an executor: daemon threads, created on demand,
+         * reclaimed after idling (the engines bound how many run at once)
+         */
+        private static class DefaultExecutorHolder {
+            private static final Executor EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                    30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MyNetProbe-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        /**
+         * blocking, call from a background thread
+         * <br>a URL already being probed (by any engine, for TCP/NIO any URL of the same
+         * host and port) waits for that probe instead of opening another connection, see InFlightProbes
+         */
+        public List<UrlResult> check(String... urls) {
+            return check(StopPolicy.ALL, SILENT, urls);
+        }
+
+        private static final ProbeListener SILENT = new ProbeListener() {
+            @Override
+            public void onResult(int index, UrlResult urlResult) {
+            }
+
+            @Override
+            public void onComplete(ProbeSummary probeSummary) {
+            }
+        };
+
+        /**
+         * blocking, call from a background thread
+         * <br>streams each result to listener (on the calling thread) as soon as it is known,
+         * cached results first, then probes in completion order
+         * <br>probes still running at the deadline are reported as FALSE,
+         * once stopPolicy is satisfied the remaining probes are cancelled and not reported
+         * <br>a probe another check still waits on is never cancelled, it runs on for that check
+         * @return all results in input order, the ones not reported (stopped early) as FALSE
+         */
+        public List<UrlResult> check(StopPolicy stopPolicy, ProbeListener listener, String... urls) {
+            long startNanos = System.nanoTime();
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+            int numOfArgs = urls.length;
+            UrlResult[] urlResults = new UrlResult[numOfArgs];
+            int numOfReported = 0;
+            int numOfReachable = 0;
+            boolean stopped = false;
+
+            for (int i = 0; i < numOfArgs && !stopped; i++) {
+                UrlResult cached = cache != null ? cache.get(urls[i], mode) : null;
+                if (cached != null) {
+                    urlResults[i] = cached;
+                    numOfReported++;
+                    if (Boolean.TRUE.equals(cached.getResult())) numOfReachable++;
+                    listener.onResult(i, cached);
+                    stopped = stopPolicy.isSatisfied(numOfReachable);
+                }
+            }
+
+            List<Flight> flights = new ArrayList<>(Collections.<Flight>nCopies(numOfArgs, null));
+            final List<Flight> ownFlights = new ArrayList<>(numOfArgs);
+            boolean[] own = new boolean[numOfArgs];
+            final BlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+            final AtomicInteger nextProbe = new AtomicInteger();
+            final AtomicBoolean finished = new AtomicBoolean();
+            FutureTask<Void> selectorTask = null;
+            try {
+                for (int i = 0; i < numOfArgs && !stopped; i++) {
+                    if (urlResults[i] != null) continue;
+
+                    String key = ReachabilityCache.key(urls[i], mode);
+                    Flight flight = new Flight(key, new Probe(urls[i], ReachabilityCache.hostKey(urls[i], mode), mode,
+                            connectTimeoutMillis, readTimeoutMillis));
+                    Flight pending = InFlightProbes.getDefault().join(key, flight);
+                    if (pending != null) {
+                        flight = pending;
+                    } else {
+                        ownFlights.add(flight);
+                        own[i] = true;
+                    }
+                    flights.set(i, flight);
+
+                    final int index = i;
+                    flight.whenDone(new Runnable() {
+                        @Override
+                        public void run() {
+                            completed.offer(index);
+                        }
+                    });
+                }
+
+                final int numOfProbes = ownFlights.size();
+                if (numOfProbes > 0 && mode == ProbeMode.NIO) {
+                    final String[] probeUrls = new String[numOfProbes];
+                    for (int j = 0; j < numOfProbes; j++) {
+                        probeUrls[j] = ownFlights.get(j).probe.url;
+                    }
+                    final long selectorDeadlineNanos = deadlineNanos;
+                    selectorTask = new FutureTask<>(new Runnable() {
+                        @Override
+                        public void run() {
+                            new SelectorProbe(connectTimeoutMillis).connectAll(probeUrls, selectorDeadlineNanos,
+                                    new SelectorProbe.Callback() {
+                                        @Override
+                                        public void onStart(int index) {
+                                            ownFlights.get(index).probe.started = true;
+                                        }
+
+                                        @Override
+                                        public boolean claim(int index) {
+                                            return ownFlights.get(index).probe.claim();
+                                        }
+
+                                        @Override
+                                        public void onResult(int index, UrlResult urlResult) {
+                                            // past this check, probes other checks wait on are re-run
+                                            if (!finished.get() && !SelectorProbe.expired(selectorDeadlineNanos)) {
+                                                ownFlights.get(index).complete(urlResult);
+                                            }
+                                        }
+                                    });
+                        }
+                    }, null);
+                    execute(selectorTask);
+                    if (selectorTask.isCancelled()) {
+                        for (Flight flight : ownFlights) {
+                            flight.cancel(false);
+                        }
+                    }
+                } else if (numOfProbes > 0) {
+                    // each finished probe starts the next one, so at most concurrency run at once
+                    Runnable startNext = new Runnable() {
+                        @Override
+                        public void run() {
+                            if (finished.get()) return;
+                            int j = nextProbe.getAndIncrement();
+                            if (j < numOfProbes) {
+                                execute(ownFlights.get(j));
+                            }
+                        }
+                    };
+                    for (Flight flight : ownFlights) {
+                        flight.whenDone(startNext);
+                    }
+                    for (int j = 0; j < Math.min(concurrency, numOfProbes); j++) {
+                        startNext.run();
+                    }
+                }
+
+                while (numOfReported < numOfArgs && !stopped) {
+                    Integer index = completed.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (index == null) break;
+
+                    int i = index;
+                    UrlResult urlResult = resultOf(flights.get(i));
+                    if (urlResult == null) {
+                        urlResult = expired(urls[i]);
+                    } else if (own[i]) {
+                        if (cache != null) cache.put(urlResult, mode);
+                    } else {
+                        // answered by another caller's probe of the same URL (or host, TCP/NIO)
+                        urlResult = urlResult.copyFor(urls[i]);
+                    }
+
+                    urlResults[i] = urlResult;
+                    numOfReported++;
+                    if (Boolean.TRUE.equals(urlResult.getResult())) numOfReachable++;
+                    listener.onResult(i, urlResult);
+                    stopped = stopPolicy.isSatisfied(numOfReachable);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // deadline expired or stopped early: probes nobody else waits on are aborted,
+                // connect() ignores interrupts so Flight.cancel() closes the socket under it
+                finished.set(true);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                for (int i = 0; i < numOfArgs; i++) {
+                    Flight flight = flights.get(i);
+                    if (flight == null || flight.isDone()) continue;
+
+                    if (flight.detach()) {
+                        // a probe still queued behind the concurrency limit did not time out,
+                        // one that just finished may have been recorded by its own thread already
+                        if (flight.cancel(true) && !stopped && flight.probe.started && flight.probe.claim()) {
+                            ProbeMetrics.getDefault().record(flight.probe.key, ProbeMetrics.TIMEOUT, elapsedNanos);
+                        }
+                    } else if (own[i] && (mode == ProbeMode.NIO || !flight.probe.started)) {
+                        // other checks joined it, it must run even if this check never started it
+                        // (NIO: the selector is cancelled below, it runs as a plain TCP probe)
+                        execute(flight);
+                    }
+                }
+                if (selectorTask != null) {
+                    selectorTask.cancel(true);
+                }
+            }
+
+            if (!stopped) {
+                for (int i = 0; i < numOfArgs; i++) {
+                    if (urlResults[i] != null) continue;
+                    urlResults[i] = expired(urls[i]);
+                    numOfReported++;
+                    listener.onResult(i, urlResults[i]);
+                }
+            }
+
+            listener.onComplete(new ProbeSummary(numOfArgs, numOfReported, numOfReachable,
+                    System.nanoTime() - startNanos, stopped));
+
+            for (int i = 0; i < numOfArgs; i++) {
+                if (urlResults[i] == null) {
+                    urlResults[i] = new UrlResult(urls[i], false);
+                }
+            }
+            return new ArrayList<>(Arrays.asList(urlResults));
+        }
+
+        /**
+         * a task the executor refuses is cancelled, so its probe reports as not reachable
+         */
+        private void execute(FutureTask<?> task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                e.printStackTrace();
+                task.cancel(false);
+            }
+        }
+
+        /**
+         * NULL if the probe was cancelled (by its owner's deadline)
+         */
+        private static UrlResult resultOf(Future<UrlResult> flight)
+                throws InterruptedException {
+            try {
+                return flight.get();
+            } catch (CancellationException e) {
+                return null;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        private static UrlResult expired(String url) {
+            return new UrlResult(url, false);
+        }
+    }
+
+    /**
+     * streamed ProbeEngine results, called on the thread running ProbeEngine.check()
+     */
+    public interface ProbeListener {
+        /**
+         * @param index position of the URL in the checked list
+         */
+        void onResult(int index, UrlResult urlResult);
+
+        /**
+         * once per check, after the last onResult()
+         */
+        void onComplete(ProbeSummary probeSummary);
+    }
+
+    /**
+     * when a streaming ProbeEngine.check() may stop before all URLs are answered
+     * <br>ALL: wait for every URL (or the deadline)
+     * <br>FIRST_REACHABLE: stop at the first reachable URL
+     * <br>anyReachable(n): stop once n URLs are reachable
+     */
+    public static class StopPolicy {
+        public static final StopPolicy ALL = new StopPolicy(0);
+        public static final StopPolicy FIRST_REACHABLE = new StopPolicy(1);
+
+        private final int reachableNeeded;
+
+        private StopPolicy(int reachableNeeded) {
+            this.reachableNeeded = reachableNeeded;
+        }
+
+        public static StopPolicy anyReachable(int reachableNeeded) {
+            if (reachableNeeded <= 0) {
+                throw new IllegalArgumentException("invalid reachable count");
+            }
+            return reachableNeeded == 1 ? FIRST_REACHABLE : new StopPolicy(reachableNeeded);
+        }
+
+        public boolean isSatisfied(int reachableCount) {
+            return reachableNeeded > 0 && reachableCount >= reachableNeeded;
+        }
+    }
+
+    /**
+     * aggregate of one ProbeEngine.check()
+     */
+    public static class ProbeSummary {
+        private final int urlCount;
+        private final int reportedCount;
+        private final int reachableCount;
+        private final long elapsedNanos;
+        private final boolean stoppedEarly;
+
+        private ProbeSummary(int urlCount, int reportedCount, int reachableCount, long elapsedNanos,
+                             boolean stoppedEarly) {
+            this.urlCount = urlCount;
+            this.reportedCount = reportedCount;
+            this.reachableCount = reachableCount;
+            this.elapsedNanos = elapsedNanos;
+            this.stoppedEarly = stoppedEarly;
+        }
+
+        public int getUrlCount() {
+            return urlCount;
+        }
+
+        /**
+         * number of onResult() calls, less than getUrlCount() only if stopped early
+         */
+        public int getReportedCount() {
+            return reportedCount;
+        }
+
+        public int getReachableCount() {
+            return reachableCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * TRUE if the StopPolicy was satisfied and remaining probes were cancelled
+         */
+        public boolean isStoppedEarly() {
+            return stoppedEarly;
+        }
+
+        @Override
+        public String toString() {
+            return "reported " + reportedCount + "/" + urlCount + ", reachable " + reachableCount
+                    + ", " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                    + (stoppedEarly ? ", stopped early" : "");
+        }
+    }
+
+    /**
+     * probe of one URL (or host) that other callers can wait on,
+     * unregisters itself from InFlightProbes once done or cancelled
+     * <br>counts the checks waiting on it (its owner included), only the last one to leave cancels it
+     */
+    private static class Flight extends FutureTask<UrlResult> {
+        private final String key;
+        private final Probe probe;
+        private final List<Runnable> doneCallbacks = new ArrayList<>(1);
+        private final AtomicInteger waiters = new AtomicInteger(1);
+
+        private Flight(String key, Probe probe) {
+            super(probe);
+            this.key = key;
+            this.probe = probe;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                probe.abort();
+            }
+            return cancelled;
+        }
+
+        /**
+         * another check waits on this flight too
+         * @return FALSE if everybody already left (it is being cancelled), join a new flight then
+         */
+        private boolean attach() {
+            while (true) {
+                int count = waiters.get();
+                if (count == 0) return false;
+                if (waiters.compareAndSet(count, count + 1)) return true;
+            }
+        }
+
+        /**
+         * a check stops waiting on this flight
+         * @return TRUE if it was the last one, the flight should be cancelled then
+         */
+        private boolean detach() {
+            return waiters.decrementAndGet() == 0;
+        }
+
+        /**
+         * for probes run outside of this task (SelectorProbe)
+         */
+        private void complete(UrlResult urlResult) {
+            set(urlResult);
+        }
+
+        /**
+         * runs callback once done (or cancelled), right away if already done
+         */
+        private void whenDone(Runnable callback) {
+            synchronized (doneCallbacks) {
+                if (!isDone()) {
+                    doneCallbacks.add(callback);
+                    return;
+                }
+            }
+            callback.run();
+        }
+
+        @Override
+        protected void done() {
+            InFlightProbes.getDefault().leave(key, this);
+
+            Runnable[] callbacks;
+            synchronized (doneCallbacks) {
+                callbacks = doneCallbacks.toArray(new Runnable[doneCallbacks.size()]);
+                doneCallbacks.clear();
+            }
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    /**
+     * TCP connect probe of many hosts on the calling thread:
+     * non-blocking SocketChannels multiplexed over one Selector
+     * <br>all connects are started at once and completed as the Selector reports them,
+     * so memory is constant per host and no thread is needed per host
+     * <br>note: host names are resolved (blocking) one after another before connecting,
+     * the deadline and interrupts are checked between hosts
+     */
+    public static class SelectorProbe {
+        private final int connectTimeoutMillis;
+
+        interface Callback {
+            /**
+             * the host's connect is about to be started
+             */
+            void onStart(int index);
+
+            /**
+             * TRUE if the host's outcome may be recorded to ProbeMetrics, FALSE if already recorded elsewhere
+             */
+            boolean claim(int index);
+
+            void onResult(int index, UrlResult urlResult);
+        }
+
+        public SelectorProbe(int connectTimeoutMillis) {
+            if (connectTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("invalid timeout");
+            }
+            this.connectTimeoutMillis = connectTimeoutMillis;
+        }
+
+        /**
+         * blocking, call from a background thread
+         */
+        public List<UrlResult> check(String... urls) {
+            UrlResult[] urlResults = connectAll(urls, Long.MAX_VALUE, null);
+            return new ArrayList<>(Arrays.asList(urlResults));
+        }
+
+        /**
+         * stops early (remaining hosts FALSE) if the calling thread is interrupted
+         * @param deadlineNanos System.nanoTime() after which pending connects are given up
+         * @param callback optional, told about each host as soon as its result is final
+         */
+        UrlResult[] connectAll(String[] urls, long deadlineNanos, Callback callback) {
+            int numOfArgs = urls.length;
+            Batch batch = new Batch(urls, callback);
+
+            Selector selector = null;
+            try {
+                selector = Selector.open();
+
+                int pending = 0;
+                for (int i = 0; i < numOfArgs; i++) {
+                    // resolving blocks per host, a cancelled or expired batch stops here
+                    if (Thread.currentThread().isInterrupted() || expired(deadlineNanos)) break;
+
+                    InetSocketAddress address;
+                    try {
+                        address = Probe.address(new URL(urls[i]));
+                    } catch (MalformedURLException e) {
+                        e.printStackTrace();
+                        batch.finish(i, ProbeMetrics.MALFORMED);
+                        continue;
+                    }
+                    if (address.isUnresolved()) {
+                        batch.finish(i, ProbeMetrics.FAILURE);
+                        continue;
+                    }
+
+                    SocketChannel channel = null;
+                    try {
+                        channel = SocketChannel.open();
+                        channel.configureBlocking(false);
+                        if (callback != null) callback.onStart(i);
+                        batch.startNanos[i] = System.nanoTime();
+                        if (channel.connect(address)) {
+                            batch.urlResults[i].connectNanos = System.nanoTime() - batch.startNanos[i];
+                            prewarm(address);
+                            close(channel);
+                            batch.finish(i, ProbeMetrics.SUCCESS);
+                        } else {
+                            batch.addresses[i] = address;
+                            channel.register(selector, SelectionKey.OP_CONNECT, i);
+                            pending++;
+                        }
+                    } catch (IOException e) {
+                        close(channel);
+                        batch.finish(i, ProbeMetrics.FAILURE);
+                    }
+                }
+
+                long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+                long expiresAtNanos = System.nanoTime() + timeoutNanos;
+                if (deadlineNanos - expiresAtNanos < 0) {
+                    expiresAtNanos = deadlineNanos;
+                }
+
+                while (pending > 0 && !Thread.currentThread().isInterrupted()) {
+                    long remainingNanos = expiresAtNanos - System.nanoTime();
+                    if (remainingNanos <= 0) break;
+
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        int i = (Integer) key.attachment();
+                        SocketChannel channel = (SocketChannel) key.channel();
+                        int outcome;
+                        try {
+                            if (!channel.finishConnect()) continue;
+                            batch.urlResults[i].connectNanos = System.nanoTime() - batch.startNanos[i];
+                            prewarm(batch.addresses[i]);
+                            outcome = ProbeMetrics.SUCCESS;
+                        } catch (IOException e) {
+                            outcome = ProbeMetrics.FAILURE;
+                        }
+                        key.cancel();
+                        close(channel);
+                        pending--;
+                        batch.finish(i, outcome);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                // whatever is still pending timed out (or the selector failed)
+                if (selector != null) {
+                    for (SelectionKey key : selector.keys()) {
+                        close(key.channel());
+                    }
+                    close(selector);
+                }
+                // interrupted: cancelled by ProbeEngine, which records those itself
+                batch.recording = !Thread.currentThread().isInterrupted();
+                for (int i = 0; i < numOfArgs; i++) {
+                    if (!batch.finished[i]) {
+                        batch.finish(i, ProbeMetrics.TIMEOUT);
+                    }
+                }
+            }
+
+            return batch.urlResults;
+        }
+
+        /**
+         * Long.MAX_VALUE: no deadline
+         */
+        private static boolean expired(long deadlineNanos) {
+            return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0;
+        }
+
+        /**
+         * per host state of one connectAll()
+         */
+        private static class Batch {
+            private final UrlResult[] urlResults;
+            private final String[] keys;
+            private final InetSocketAddress[] addresses;
+            private final long[] startNanos;
+            private final boolean[] finished;
+            private final Callback callback;
+            private boolean recording = true;
+
+            private Batch(String[] urls, Callback callback) {
+                int numOfArgs = urls.length;
+                this.urlResults = new UrlResult[numOfArgs];
+                this.keys = new String[numOfArgs];
+                this.addresses = new InetSocketAddress[numOfArgs];
+                this.startNanos = new long[numOfArgs];
+                this.finished = new boolean[numOfArgs];
+                this.callback = callback;
+                for (int i = 0; i < numOfArgs; i++) {
+                    urlResults[i] = new UrlResult(urls[i], null);
+                    keys[i] = ReachabilityCache.hostKey(urls[i], ProbeMode.NIO);
+                }
+            }
+
+            private void finish(int i, int outcome) {
+                finished[i] = true;
+                if (outcome != ProbeMetrics.MALFORMED) {
+                    urlResults[i].setResult(outcome == ProbeMetrics.SUCCESS);
+                }
+                // a host never started did not time out, and an engine's deadline may have recorded it
+                boolean started = startNanos[i] != 0;
+                if (recording && (started || outcome != ProbeMetrics.TIMEOUT)
+                        && (callback == null || callback.claim(i))) {
+                    ProbeMetrics.getDefault().record(keys[i], outcome,
+                            started ? System.nanoTime() - startNanos[i] : ProbeMetrics.NO_LATENCY);
+                }
+                if (callback != null) {
+                    callback.onResult(i, urlResults[i]);
+                }
+            }
+        }
+
+        /**
+         * channels are non-blocking and registered with the selector, so only addresses are warmed
+         */
+        private static void prewarm(InetSocketAddress address) {
+            WarmConnections warmConnections = WarmConnections.getDefault();
+            if (warmConnections.isEnabled()) {
+                warmConnections.offerAddresses(address.getHostString(), address.getAddress());
+            }
+        }
+
+        private static void close(Closeable closeable) {
+            if (closeable == null) return;
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * process-wide registry of probes in flight, keyed like ReachabilityCache
+     * <br>concurrent checks of the same URL (TCP/NIO: the same host and port) share one connection,
+     * getCoalescedCount() reports how many callers were spared a probe
+     */
+    public static class InFlightProbes {
+        private static final InFlightProbes DEFAULT = new InFlightProbes();
+
+        private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+        private final AtomicLong coalescedCount = new AtomicLong();
+
+        private InFlightProbes() {
+        }
+
+        public static InFlightProbes getDefault() {
+            return DEFAULT;
+        }
+
+        /**
+         * registers flight for key, or returns the pending flight already registered for key
+         * <br>NULL if flight was registered (caller must run it), always NULL for a NULL key
+         */
+        private Flight join(String key, Flight flight) {
+            if (key == null) return null;
+
+            while (true) {
+                Flight pending = flights.putIfAbsent(key, flight);
+                if (pending == null) return null;
+                if (pending.attach()) {
+                    coalescedCount.incrementAndGet();
+                    return pending;
+                }
+                // abandoned by all its waiters, about to be cancelled
+                flights.remove(key, pending);
+            }
+        }
+
+        private void leave(String key, Flight flight) {
+            if (key == null) return;
+
+            flights.remove(key, flight);
+        }
+
+        /**
+         * number of probes currently in flight
+         */
+        public int size() {
+            return flights.size();
+        }
+
+        /**
+         * total number of callers that attached to another caller's probe
+         */
+        public long getCoalescedCount() {
+            return coalescedCount.get();
+        }
+    }
+
+    /**
+     * bounded in-memory cache of probe results, keyed by URL (scheme, host, port, path and query)
+     * and ProbeMode, TCP/NIO only look at the host so those are keyed by scheme, host and port
+     * <br>reachable and unreachable hosts expire after separate TTLs,
+     * least recently used entries are evicted once full
+     * <br>malformed URLs and probes cut off by a deadline are never cached
+     * <br>MyNetReceiver flushes the default cache on connectivity change
+     */
+    public static class ReachabilityCache {
+        public static final int DEFAULT_MAX_ENTRIES = 64;
+        public static final long DEFAULT_POSITIVE_TTL_MILLIS = 30000;
+        public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5000;
+
+        private static final ReachabilityCache DEFAULT = new ReachabilityCache(DEFAULT_MAX_ENTRIES,
+                DEFAULT_POSITIVE_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+
+        private final long positiveTtlNanos;
+        private final long negativeTtlNanos;
+        private final Map<String, CacheEntry> entries;
+
+        public ReachabilityCache(final int maxEntries, long positiveTtlMillis, long negativeTtlMillis) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("invalid max entries");
+            }
+            this.positiveTtlNanos = TimeUnit.MILLISECONDS.toNanos(positiveTtlMillis);
+            this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+            // access order, so the eldest entry is the least recently used
+            this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        /**
+         * process-wide cache used by ProbeEngine unless another one is given
+         */
+        public static ReachabilityCache getDefault() {
+            return DEFAULT;
+        }
+
+        /**
+         * copy of the cached result for url (TCP/NIO: url's host), NULL if none or expired
+         */
+        public UrlResult get(String url, ProbeMode mode) {
+            String key = key(url, mode);
+            if (key == null) return null;
+
+            CacheEntry entry;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null) return null;
+                if (System.nanoTime() - entry.expiresAtNanos > 0) {
+                    entries.remove(key);
+                    return null;
+                }
+            }
+
+            UrlResult cached = entry.result.copyFor(url);
+            cached.cached = true;
+            return cached;
+        }
+
+        public void put(UrlResult urlResult, ProbeMode mode) {
+            Boolean result = urlResult.getResult();
+            if (result == null) return;
+            String key = key(urlResult.getUrl(), mode);
+            if (key == null) return;
+
+            long ttlNanos = result ? positiveTtlNanos : negativeTtlNanos;
+            if (ttlNanos <= 0) return;
+
+            CacheEntry entry = new CacheEntry(urlResult, System.nanoTime() + ttlNanos);
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+
+        public void invalidateAll() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+
+        public int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+
+        /**
+         * GET/HEAD: "scheme://host:port/path?query MODE", the status code depends on the path
+         * <br>TCP/NIO: hostKey()
+         * <br>NULL if url is malformed
+         */
+        static String key(String url, ProbeMode mode) {
+            if (mode == ProbeMode.TCP || mode == ProbeMode.NIO) return hostKey(url, mode);
+            try {
+                URL target = url != null ? new URL(url) : null;
+                String hostPort = hostPort(target);
+                if (hostPort == null) return null;
+                String file = target.getFile();
+                return hostPort + (file.isEmpty() ? "/" : file) + " " + mode;
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        /**
+         * "scheme://host:port MODE", NULL if url is malformed, the key of ProbeMetrics
+         */
+        static String hostKey(String url, ProbeMode mode) {
+            try {
+                String hostPort = url != null ? hostPort(new URL(url)) : null;
+                return hostPort != null ? hostPort + " " + mode : null;
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        private static String hostPort(URL target) {
+            if (target == null) return null;
+            String host = target.getHost();
+            if (host == null || host.isEmpty()) return null;
+            int port = target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+            return target.getProtocol().toLowerCase(Locale.US) + "://" + host.toLowerCase(Locale.US) + ":" + port;
+        }
+
+        private static class CacheEntry {
+            private final UrlResult result;
+            private final long expiresAtNanos;
+
+            private CacheEntry(UrlResult result, long expiresAtNanos) {
+                this.result = result;
+                this.expiresAtNanos = expiresAtNanos;
+            }
+        }
+    }
+
+    /**
+     * opt-in connection pre-warming for hosts a probe just confirmed reachable
+     * <br>resolved addresses are kept for the idle period, see getAddresses()
+     * <br>TCP: the probe's connected socket is kept for the idle period instead of being closed,
+     * see take(), at most one per host and port, closed if nobody takes it in time
+     * <br>HTTP (HEAD, or GET with an empty body): the connection is released to the platform's
+     * keep-alive pool instead of being disconnected, the next HttpURLConnection to that host
+     * reuses it (for as long as the platform keeps idle connections)
+     * <br>NIO: addresses only
+     * <pre>
+    WarmConnections.getDefault().setEnabled(true);
+     * </pre>
+     */
+    public static class WarmConnections {
+        public static final long DEFAULT_IDLE_MILLIS = 30000;
+        public static final int DEFAULT_MAX_SOCKETS = 4;
+
+        private static final WarmConnections DEFAULT = new WarmConnections(DEFAULT_IDLE_MILLIS, DEFAULT_MAX_SOCKETS);
+
+        private final long idleMillis;
+        private final int maxSockets;
+        private final ConcurrentHashMap<String, WarmAddresses> addresses = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, WarmSocket> sockets = new ConcurrentHashMap<>();
+        private volatile boolean enabled;
+
+        public WarmConnections(long idleMillis, int maxSockets) {
+            if (idleMillis <= 0) {
+                throw new IllegalArgumentException("invalid idle period");
+            }
+            if (maxSockets < 0) {
+                throw new IllegalArgumentException("invalid max sockets");
+            }
+            this.idleMillis = idleMillis;
+            this.maxSockets = maxSockets;
+        }
+
+        /**
+         * process-wide instance fed by every ProbeEngine and SelectorProbe, disabled until setEnabled(true)
+         */
+        public static WarmConnections getDefault() {
+            return DEFAULT;
+        }
+
+        /**
+         * disabling drops (and closes) everything warmed so far
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            if (!enabled) {
+                invalidateAll();
+            }
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * addresses host resolved to when last probed, NULL if none or idled out
+         */
+        public InetAddress[] getAddresses(String host) {
+            if (host == null) return null;
+
+            String key = host.toLowerCase(Locale.US);
+            WarmAddresses warm = addresses.get(key);
+            if (warm == null) return null;
+            if (System.nanoTime() - warm.expiresAtNanos > 0) {
+                addresses.remove(key, warm);
+                return null;
+            }
+            return warm.addresses.clone();
+        }
+
+        /**
+         * hands over the warmed, connected socket to host and port, the caller owns (and closes) it
+         * <br>NULL if none, idled out or closed by the peer meanwhile
+         */
+        public Socket take(String host, int port) {
+            if (host == null) return null;
+
+            WarmSocket warm = sockets.remove(key(host, port));
+            if (warm == null) return null;
+            if (!warm.claim() || System.nanoTime() - warm.expiresAtNanos > 0 || warm.socket.isClosed()) {
+                close(warm.socket);
+                return null;
+            }
+            return warm.socket;
+        }
+
+        /**
+         * number of warmed sockets waiting to be taken
+         */
+        public int size() {
+            return sockets.size();
+        }
+
+        public void invalidateAll() {
+            addresses.clear();
+            for (String key : sockets.keySet()) {
+                WarmSocket warm = sockets.remove(key);
+                if (warm != null && warm.claim()) {
+                    close(warm.socket);
+                }
+            }
+        }
+
+        /**
+         * remembers what host resolves to, resolving is served by the system's DNS cache
+         * as the probe resolved host moments ago
+         */
+        void offerAddresses(String host) {
+            if (!enabled || host == null || host.isEmpty()) return;
+            try {
+                offerAddresses(host, InetAddress.getAllByName(host));
+            } catch (UnknownHostException e) {
+                // reachable a moment ago, nothing to keep then
+            }
+        }
+
+        void offerAddresses(String host, InetAddress... resolved) {
+            if (!enabled || host == null || resolved.length == 0) return;
+
+            long expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleMillis);
+            addresses.put(host.toLowerCase(Locale.US), new WarmAddresses(resolved, expiresAtNanos));
+        }
+
+        /**
+         * keeps socket for the idle period
+         * @return FALSE if not kept (disabled, full, or one kept for that host already), the caller closes it then
+         */
+        boolean offerSocket(String host, int port, Socket socket) {
+            if (!enabled || host == null || sockets.size() >= maxSockets) return false;
+
+            final String key = key(host, port);
+            final WarmSocket warm = new WarmSocket(socket, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleMillis));
+            if (sockets.putIfAbsent(key, warm) != null) return false;
+
+            try {
+                ReaperHolder.REAPER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (sockets.remove(key, warm) && warm.claim()) {
+                            close(warm.socket);
+                        }
+                    }
+                }, idleMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                sockets.remove(key, warm);
+                return false;
+            }
+            return true;
+        }
+
+        private static String key(String host, int port) {
+            return host.toLowerCase(Locale.US) + ":" + port;
+        }
+
+        private static void close(Socket socket) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * closes sockets nobody took, one daemon thread shared by all instances
+         */
+        private static class ReaperHolder {
+            private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "MyNetProbe-WarmConnections");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+
+        private static class WarmAddresses {
+            private final InetAddress[] addresses;
+            private final long expiresAtNanos;
+
+            private WarmAddresses(InetAddress[] addresses, long expiresAtNanos) {
+                this.addresses = addresses;
+                this.expiresAtNanos = expiresAtNanos;
+            }
+        }
+
+        private static class WarmSocket {
+            private final Socket socket;
+            private final long expiresAtNanos;
+            // whoever claims it (take, reaper or invalidateAll) owns the socket
+            private final AtomicBoolean claimed = new AtomicBoolean();
+
+            private WarmSocket(Socket socket, long expiresAtNanos) {
+                this.socket = socket;
+                this.expiresAtNanos = expiresAtNanos;
+            }
+
+            private boolean claim() {
+                return claimed.compareAndSet(false, true);
+            }
+        }
+    }
+
+    /**
+     * per host (and probe mode) probe metrics: success, failure, timeout and malformed counters
+     * plus a latency MyHistogram
+     * <br>recording is lock-free and, once a host has been seen, allocation-free
+     * <br>only probes actually run are recorded (not cached or coalesced answers)
+     */
+    public static class ProbeMetrics {
+        public static final int SUCCESS = 0;
+        public static final int FAILURE = 1;
+        public static final int TIMEOUT = 2;
+        public static final int MALFORMED = 3;
+        public static final long NO_LATENCY = MyHistogram.NONE;
+
+        private static final int OUTCOMES = 4;
+        private static final String MALFORMED_KEY = "(malformed)";
+
+        private static final ProbeMetrics DEFAULT = new ProbeMetrics();
+
+        private final ConcurrentHashMap<String, HostCounters> hosts = new ConcurrentHashMap<>();
+
+        /**
+         * process-wide metrics, recorded by every ProbeEngine and SelectorProbe
+         */
+        public static ProbeMetrics getDefault() {
+            return DEFAULT;
+        }
+
+        /**
+         * @param key ReachabilityCache.hostKey(), NULL for a malformed URL
+         * @param outcome SUCCESS, FAILURE, TIMEOUT or MALFORMED
+         * @param latencyNanos probe duration, NO_LATENCY if none
+         */
+        public void record(String key, int outcome, long latencyNanos) {
+            if (key == null) key = MALFORMED_KEY;
+
+            HostCounters counters = hosts.get(key);
+            if (counters == null) {
+                HostCounters created = new HostCounters();
+                counters = hosts.putIfAbsent(key, created);
+                if (counters == null) counters = created;
+            }
+
+            counters.outcomes.incrementAndGet(outcome);
+            if (latencyNanos >= 0) {
+                counters.latency.record(latencyNanos);
+            }
+        }
+
+        /**
+         * copy of every host's counters, keyed like ReachabilityCache.hostKey()
+         */
+        public Map<String, HostMetrics> snapshot() {
+            Map<String, HostMetrics> snapshot = new LinkedHashMap<>();
+            for (Map.Entry<String, HostCounters> host : hosts.entrySet()) {
+                HostCounters counters = host.getValue();
+                long[] outcomes = new long[OUTCOMES];
+                for (int i = 0; i < OUTCOMES; i++) {
+                    outcomes[i] = counters.outcomes.get(i);
+                }
+                snapshot.put(host.getKey(), new HostMetrics(host.getKey(), outcomes, counters.latency.getBuckets()));
+            }
+            return snapshot;
+        }
+
+        public void reset() {
+            hosts.clear();
+        }
+
+        private static class HostCounters {
+            private final AtomicLongArray outcomes = new AtomicLongArray(OUTCOMES);
+            private final MyHistogram latency = new MyHistogram();
+        }
+    }
+
+    /**
+     * immutable snapshot of one host's ProbeMetrics
+     */
+    public static class HostMetrics {
+        private final String key;
+        private final long[] outcomes;
+        private final long[] latencyBuckets;
+
+        private HostMetrics(String key, long[] outcomes, long[] latencyBuckets) {
+            this.key = key;
+            this.outcomes = outcomes;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getSuccessCount() {
+            return outcomes[ProbeMetrics.SUCCESS];
+        }
+
+        public long getFailureCount() {
+            return outcomes[ProbeMetrics.FAILURE];
+        }
+
+        public long getTimeoutCount() {
+            return outcomes[ProbeMetrics.TIMEOUT];
+        }
+
+        public long getMalformedCount() {
+            return outcomes[ProbeMetrics.MALFORMED];
+        }
+
+        /**
+         * histogram counts, bucket i holds latencies below 2^(i+1) microseconds
+         */
+        public long[] getLatencyBuckets() {
+            return latencyBuckets.clone();
+        }
+
+        /**
+         * upper bound of the bucket holding the given quantile (0.5 = p50, 0.99 = p99),
+         * NO_LATENCY if nothing recorded
+         */
+        public long getLatencyQuantileNanos(double quantile) {
+            return MyHistogram.quantileNanos(latencyBuckets, quantile);
+        }
+
+        @Override
+        public String toString() {
+            return key + " ok " + getSuccessCount() + ", fail " + getFailureCount()
+                    + ", timeout " + getTimeoutCount() + ", malformed " + getMalformedCount()
+                    + ", p50 " + millis(getLatencyQuantileNanos(0.5))
+                    + ", p99 " + millis(getLatencyQuantileNanos(0.99));
+        }
+
+        private static String millis(long nanos) {
+            return nanos == ProbeMetrics.NO_LATENCY ? "-" : TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+        }
+    }
+
+    private static class Probe implements Callable<UrlResult> {
+        private final String url;
+        private final String key;
+        private final ProbeMode mode;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+        private volatile HttpURLConnection connection;
+        private volatile Socket socket;
+        private volatile boolean aborted;
+        // call() (or SelectorProbe) got to it, queued probes never did
+        private volatile boolean started;
+        // its outcome went to ProbeMetrics, from the probing thread or as the engine's timeout
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private Probe(String url, String key, ProbeMode mode, int connectTimeoutMillis, int readTimeoutMillis) {
+            this.url = url;
+            this.key = key;
+            this.mode = mode;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        @Override
+        public UrlResult call() {
+            started = true;
+            UrlResult urlResult = new UrlResult(url, null);
+            long start = System.nanoTime();
+            int outcome;
+            try {
+                URL target = new URL(url);
+                if (mode == ProbeMode.TCP || mode == ProbeMode.NIO) {
+                    probeTcp(target, urlResult);
+                } else {
+                    probeHttp(target, urlResult);
+                }
+                outcome = urlResult.getResult() ? ProbeMetrics.SUCCESS : ProbeMetrics.FAILURE;
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
+                outcome = ProbeMetrics.MALFORMED;
+            } catch (SocketTimeoutException e) {
+                urlResult.setResult(false);
+                outcome = ProbeMetrics.TIMEOUT;
+            } catch (IOException e) {
+                urlResult.setResult(false);
+                // aborted: its socket was closed under it on purpose
+                if (!aborted) e.printStackTrace();
+                outcome = ProbeMetrics.FAILURE;
+            }
+
+            // an aborted probe is recorded by ProbeEngine, as a timeout
+            if (!aborted && claim()) {
+                ProbeMetrics.getDefault().record(key, outcome,
+                        outcome == ProbeMetrics.MALFORMED ? ProbeMetrics.NO_LATENCY : System.nanoTime() - start);
+            }
+            return urlResult;
+        }
+
+        private void probeHttp(URL target, UrlResult urlResult) throws IOException {
+            HttpURLConnection httpURLConn = (HttpURLConnection) target.openConnection();
+            connection = httpURLConn;
+            boolean keepAlive = false;
+            try {
+                if (aborted) throw new IOException("aborted");
+                httpURLConn.setConnectTimeout(connectTimeoutMillis);
+                httpURLConn.setReadTimeout(readTimeoutMillis);
+                httpURLConn.setUseCaches(false);
+                if (mode == ProbeMode.HEAD) {
+                    httpURLConn.setRequestMethod("HEAD");
+                }
+
+                long start = System.nanoTime();
+                httpURLConn.connect();
+                urlResult.connectNanos = System.nanoTime() - start;
+                // only the status line and headers are read, never the body
+                urlResult.statusCode = httpURLConn.getResponseCode();
+                urlResult.firstByteNanos = System.nanoTime() - start;
+
+                urlResult.setResult(urlResult.statusCode == HttpURLConnection.HTTP_OK);
+                keepAlive = urlResult.getResult() && prewarm(target, httpURLConn);
+            } finally {
+                if (!keepAlive) {
+                    httpURLConn.disconnect();
+                }
+            }
+        }
+
+        /**
+         * with WarmConnections enabled, releases a connection with nothing left to read
+         * to the keep-alive pool (closing its empty body) instead of disconnecting it
+         * @return TRUE if released, the connection must not be disconnected then,
+         * FALSE if it could not be, the probe's result stands either way
+         */
+        private boolean prewarm(URL target, HttpURLConnection httpURLConn) {
+            WarmConnections warmConnections = WarmConnections.getDefault();
+            if (!warmConnections.isEnabled() || aborted) return false;
+            if (mode != ProbeMode.HEAD && httpURLConn.getContentLength() != 0) return false;
+
+            try {
+                httpURLConn.getInputStream().close();
+            } catch (IOException e) {
+                return false;
+            }
+            warmConnections.offerAddresses(target.getHost());
+            return true;
+        }
+
+        private void probeTcp(URL target, UrlResult urlResult) throws IOException {
+            InetSocketAddress address = address(target);
+
+            Socket tcpSocket = new Socket();
+            socket = tcpSocket;
+            boolean kept = false;
+            try {
+                if (aborted) throw new IOException("aborted");
+                long start = System.nanoTime();
+                tcpSocket.connect(address, connectTimeoutMillis);
+                urlResult.connectNanos = System.nanoTime() - start;
+
+                urlResult.setResult(true);
+                WarmConnections warmConnections = WarmConnections.getDefault();
+                if (warmConnections.isEnabled() && !aborted) {
+                    warmConnections.offerAddresses(address.getHostString(), address.getAddress());
+                    kept = warmConnections.offerSocket(address.getHostString(), address.getPort(), tcpSocket);
+                }
+            } finally {
+                if (!kept) {
+                    tcpSocket.close();
+                }
+            }
+        }
+
+        /**
+         * URL's host and port (or the protocol's default port), resolved
+         */
+        static InetSocketAddress address(URL target) throws MalformedURLException {
+            String host = target.getHost();
+            if (host == null || host.isEmpty()) {
+                throw new MalformedURLException("no host: " + target);
+            }
+            int port = target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+            return new InetSocketAddress(host, port);
+        }
+
+        /**
+         * TRUE for the first caller only, who then records the probe's outcome
+         */
+        private boolean claim() {
+            return recorded.compareAndSet(false, true);
+        }
+
+        private void abort() {
+            aborted = true;
+            HttpURLConnection httpURLConn = connection;
+            if (httpURLConn != null) {
+                httpURLConn.disconnect();
+            }
+            Socket tcpSocket = socket;
+            if (tcpSocket != null) {
+                try {
+                    tcpSocket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
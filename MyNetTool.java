@@ -1,39 +1,147 @@
+package com.samp.ling.sampleapp.utils;
+
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.util.Log;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class MyNetTool {
     private static final String tag = MyNetTool.class.getSimpleName();
 
+    /**
+     * cached network state older than this is queried again, in case no broadcast arrives
+     */
+    public static final long NETWORK_STATE_MAX_AGE_MILLIS = 2000;
+
+    // last known network state, replaced (never mutated) by refreshNetworkState() and ConnectivityBus,
+    // NULL while MyNetReceiver waits for a broadcast burst to settle
+    private static volatile NetworkState networkState;
+
     /**
      * simply checks whether a network is connected
      * <br>note: even though network may have no internet connection
+     * <br>answered from the cached NetworkState, see getNetworkState()
      */
     public static boolean isNetworkAvailable(@NonNull Context context) {
+        return getNetworkState(context).isConnected();
+    }
+
+    /**
+     * last known network state, no IPC while cached
+     * <br>queried from ConnectivityManager on first use and once older than NETWORK_STATE_MAX_AGE_MILLIS,
+     * in between kept up to date by MyNetReceiver and ConnectivityBus
+     * <br>note: MyNetReceiver must be registered with Context.registerReceiver(), from API 24
+     * a receiver declared in the manifest no longer gets CONNECTIVITY_ACTION
+     */
+    public static NetworkState getNetworkState(@NonNull Context context) {
+        NetworkState state = networkState;
+        if (state == null || SystemClock.elapsedRealtime() - state.getTimestamp() > NETWORK_STATE_MAX_AGE_MILLIS) {
+            state = refreshNetworkState(context);
+        }
+        return state;
+    }
+
+    /**
+     * queries ConnectivityManager and replaces the cached network state
+     */
+    public static NetworkState refreshNetworkState(@NonNull Context context) {
         ConnectivityManager connectivityManager
                 = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        return networkInfo != null && networkInfo.isConnected();
+        return updateNetworkState(connectivityManager, connectivityManager.getActiveNetworkInfo());
+    }
+
+    private static NetworkState updateNetworkState(@NonNull ConnectivityManager connectivityManager,
+                                                   NetworkInfo networkInfo) {
+        NetworkState state = new NetworkState(networkInfo != null && networkInfo.isConnected(),
+                networkInfo != null ? networkInfo.getType() : NetworkState.TYPE_NONE,
+                connectivityManager.isActiveNetworkMetered(),
+                SystemClock.elapsedRealtime());
+        networkState = state;
+        return state;
+    }
+
+    /**
+     * immutable snapshot of the active network
+     */
+    public static final class NetworkState {
+        public static final int TYPE_NONE = -1;
+
+        private final boolean connected;
+        private final int type;
+        private final boolean metered;
+        private final long timestamp;
+
+        private NetworkState(boolean connected, int type, boolean metered, long timestamp) {
+            this.connected = connected;
+            this.type = type;
+            this.metered = metered;
+            this.timestamp = timestamp;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * ConnectivityManager.TYPE_*, TYPE_NONE if no active network
+         */
+        public int getType() {
+            return type;
+        }
+
+        public boolean isMetered() {
+            return metered;
+        }
+
+        /**
+         * SystemClock.elapsedRealtime() when taken
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * TRUE if connected, type and metered are the same (timestamps aside)
+         */
+        public boolean isSameNetwork(@NonNull NetworkState other) {
+            return connected == other.connected && type == other.type && metered == other.metered;
+        }
+
+        @Override
+        public String toString() {
+            return "connected " + connected + ", type " + type + ", metered " + metered;
+        }
     }
 
     /**
      * check whether URL(s) can be reached
      * <br>(internet connection can be confirmed, if URL is correct and TRUE)
      * <br>TRUE if reachable
-     * <br>FALSE if not reachable
+     * <br>FALSE if not reachable (or not answered before the deadline)
      * <br>NULL if URL is malformed
+     * <br>AsyncTask adapter over MyNetProbe.ProbeEngine, URLs are probed in parallel
+     * <br>each result is also handed to onUrlResult() as soon as it is known,
+     * with a StopPolicy the remaining URLs are skipped (FALSE) once it is satisfied
      * <br>use example:
         String[] checkUrls = new String[] {"http://www.qweasddfg.com", "https://www.google.com/", "pokpok", "", null};
         MyNetTool.HostAvailabilityTask checkHost = new MyNetTool.HostAvailabilityTask() {
@@ -50,78 +158,404 @@ public class MyNetTool {
      *
      */
     public static class HostAvailabilityTask extends AsyncTask<String, Void, List<HostAvailabilityTask.UrlResult>> {
+        private final MyNetProbe.ProbeEngine probeEngine;
+        private final MyNetProbe.StopPolicy stopPolicy;
+        // results not yet handed to onUrlResult(), drained by onProgressUpdate()
+        private final Queue<UrlResult> published = new ConcurrentLinkedQueue<>();
 
         public HostAvailabilityTask() {
+            this(new MyNetProbe.ProbeEngine());
+        }
+
+        /**
+         * @param concurrency max probes in flight
+         * @param deadlineMillis overall time limit for the whole URL list
+         */
+        public HostAvailabilityTask(int concurrency, long deadlineMillis) {
+            this(new MyNetProbe.ProbeEngine(concurrency, deadlineMillis));
+        }
+
+        public HostAvailabilityTask(@NonNull MyNetProbe.ProbeEngine probeEngine) {
+            this(probeEngine, MyNetProbe.StopPolicy.ALL);
+        }
+
+        public HostAvailabilityTask(@NonNull MyNetProbe.ProbeEngine probeEngine,
+                                    @NonNull MyNetProbe.StopPolicy stopPolicy) {
+            this.probeEngine = probeEngine;
+            this.stopPolicy = stopPolicy;
         }
 
         protected List<UrlResult> doInBackground(String... params) {
-            List<UrlResult> urlResults = null;
-
-            if (params != null) {
-                int numOfArgs = params.length;
-                urlResults = new ArrayList<>(numOfArgs);
-
-                for (int i = 0; i < numOfArgs; i++) {
-                    UrlResult urlResult = new UrlResult(params[i], null);
-                    try {
-                        URL url = new URL(params[i]);
-                        HttpURLConnection httpURLConn = (HttpURLConnection) url.openConnection();
-                        httpURLConn.setConnectTimeout(1000);
-                        httpURLConn.connect();
-                        boolean isReachable = (httpURLConn.getResponseCode() == HttpURLConnection.HTTP_OK);
-                        urlResult.setResult(isReachable);
-                    } catch (MalformedURLException e) {
-                        e.printStackTrace();
-                    } catch (IOException e) {
-                        urlResult.setResult(false);
-                        e.printStackTrace();
-                    }
+            if (params == null) return null;
 
-                    urlResults.add(urlResult);
+            List<MyNetProbe.UrlResult> probeResults = probeEngine.check(stopPolicy, new MyNetProbe.ProbeListener() {
+                @Override
+                public void onResult(int index, @NonNull MyNetProbe.UrlResult urlResult) {
+                    MyLog.d(tag, "{} {}", urlResult.getUrl(), urlResult.getResult());
+                    published.add(new UrlResult(urlResult));
+                    publishProgress();
                 }
-            }
 
+                @Override
+                public void onComplete(@NonNull MyNetProbe.ProbeSummary probeSummary) {
+                    MyLog.d(tag, "probes: {}", probeSummary);
+                }
+            }, params);
+
+            List<UrlResult> urlResults = new ArrayList<>(probeResults.size());
+            for (MyNetProbe.UrlResult probeResult : probeResults) {
+                urlResults.add(new UrlResult(probeResult));
+            }
             return urlResults;
         }
 
+        /**
+         * hands published results to onUrlResult(), call super if overridden
+         */
+        protected void onProgressUpdate(Void... values) {
+            UrlResult urlResult;
+            while ((urlResult = published.poll()) != null) {
+                onUrlResult(urlResult);
+            }
+        }
+
+        /**
+         * a single result, as soon as it is known, on the main thread
+         */
+        protected void onUrlResult(UrlResult urlResult) {
+        }
+
         protected void onPostExecute(List<UrlResult> urlResults) {
             if (urlResults != null) {
-                Log.i(tag, "results: " + urlResults.size());
+                MyLog.i(tag, "results: {}", urlResults.size());
             } else {
-                Log.w(tag, "results null");
+                MyLog.w(tag, "results null");
+            }
+        }
+
+        /**
+         * MyNetProbe.UrlResult under the name the task always used
+         */
+        public static class UrlResult extends MyNetProbe.UrlResult {
+            private UrlResult(MyNetProbe.UrlResult urlResult) {
+                super(urlResult);
+            }
+        }
+    }
+
+    /**
+     * periodically probes a registered set of URLs and reports health transitions only
+     * <br>a failing host is re-probed with exponential backoff (with jitter, so hosts
+     * don't retry in lockstep), a healthy host at a slower steady interval
+     * <br>the schedule of every started monitor restarts on connectivity change (ConnectivityBus)
+     * <br>listeners are called on the monitor's thread
+     */
+    public static class HealthMonitor {
+        public static final long DEFAULT_HEALTHY_INTERVAL_MILLIS = 60000;
+        public static final long DEFAULT_MIN_BACKOFF_MILLIS = 5000;
+        public static final long DEFAULT_MAX_BACKOFF_MILLIS = 600000;
+
+        private static final Set<HealthMonitor> started = new CopyOnWriteArraySet<>();
+
+        private final MyNetProbe.ProbeEngine probeEngine;
+        private final long healthyIntervalMillis;
+        private final long minBackoffMillis;
+        private final long maxBackoffMillis;
+        private final Map<String, Endpoint> endpoints = new HashMap<>();
+        private final List<HealthListener> listeners = new CopyOnWriteArrayList<>();
+        private final Random random = new Random();
+        private ScheduledExecutorService scheduler;
+
+        public interface HealthListener {
+            void onHealthChanged(@NonNull String url, boolean healthy);
+        }
+
+        public HealthMonitor() {
+            this(new MyNetProbe.ProbeEngine(1, MyNetProbe.ProbeEngine.DEFAULT_DEADLINE_MILLIS,
+                            MyNetProbe.ProbeMode.HEAD, MyNetProbe.ProbeMode.HEAD.getConnectTimeoutMillis(),
+                            MyNetProbe.ProbeMode.HEAD.getReadTimeoutMillis(), null),
+                    DEFAULT_HEALTHY_INTERVAL_MILLIS, DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+        }
+
+        /**
+         * @param probeEngine should not use a ReachabilityCache, or probes may see stale answers
+         */
+        public HealthMonitor(@NonNull MyNetProbe.ProbeEngine probeEngine, long healthyIntervalMillis,
+                             long minBackoffMillis, long maxBackoffMillis) {
+            if (healthyIntervalMillis <= 0 || minBackoffMillis <= 0 || maxBackoffMillis < minBackoffMillis) {
+                throw new IllegalArgumentException("invalid interval");
             }
+            this.probeEngine = probeEngine;
+            this.healthyIntervalMillis = healthyIntervalMillis;
+            this.minBackoffMillis = minBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+        }
+
+        public void addListener(@NonNull HealthListener listener) {
+            listeners.add(listener);
+        }
+
+        public void removeListener(@NonNull HealthListener listener) {
+            listeners.remove(listener);
         }
 
-        protected class UrlResult {
-            private String url;
-            private Boolean result;
+        public synchronized void register(@NonNull String url) {
+            if (endpoints.containsKey(url)) return;
 
-            private UrlResult(String url, Boolean result) {
+            Endpoint endpoint = new Endpoint(url);
+            endpoints.put(url, endpoint);
+            if (scheduler != null) {
+                schedule(endpoint, 0);
+            }
+        }
+
+        public synchronized void unregister(@NonNull String url) {
+            Endpoint endpoint = endpoints.remove(url);
+            if (endpoint != null) {
+                endpoint.cancel();
+            }
+        }
+
+        /**
+         * TRUE/FALSE as of the last probe, NULL if not probed yet (or not registered)
+         */
+        public synchronized Boolean isHealthy(@NonNull String url) {
+            Endpoint endpoint = endpoints.get(url);
+            return endpoint != null ? endpoint.healthy : null;
+        }
+
+        public synchronized void start() {
+            if (scheduler != null) return;
+
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    // daemon, a monitor never stopped must not keep the process alive
+                    Thread thread = new Thread(runnable, tag + "-HealthMonitor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            started.add(this);
+            for (Endpoint endpoint : endpoints.values()) {
+                schedule(endpoint, 0);
+            }
+        }
+
+        public synchronized void stop() {
+            if (scheduler == null) return;
+
+            started.remove(this);
+            for (Endpoint endpoint : endpoints.values()) {
+                endpoint.cancel();
+            }
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        /**
+         * forgets backoff and probes every endpoint right away, keeps the last health states
+         */
+        public synchronized void reset() {
+            if (scheduler == null) return;
+
+            for (Endpoint endpoint : endpoints.values()) {
+                endpoint.cancel();
+                endpoint.failures = 0;
+                schedule(endpoint, 0);
+            }
+        }
+
+        /**
+         * resets every started monitor, on connectivity change
+         */
+        public static void resetAll() {
+            for (HealthMonitor healthMonitor : started) {
+                healthMonitor.reset();
+            }
+        }
+
+        private void schedule(final Endpoint endpoint, long delayMillis) {
+            final int generation = endpoint.generation;
+            endpoint.future = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    probe(endpoint, generation);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void probe(Endpoint endpoint, int generation) {
+            MyNetProbe.UrlResult urlResult = probeEngine.check(endpoint.url).get(0);
+            boolean healthy = Boolean.TRUE.equals(urlResult.getResult());
+
+            synchronized (this) {
+                // unregistered, stopped or reset while probing
+                if (scheduler == null || endpoint.generation != generation
+                        || endpoints.get(endpoint.url) != endpoint) return;
+
+                boolean changed = endpoint.healthy == null || endpoint.healthy != healthy;
+                endpoint.healthy = healthy;
+                endpoint.failures = healthy ? 0 : endpoint.failures + 1;
+                schedule(endpoint, nextDelayMillis(endpoint.failures));
+                if (!changed) return;
+            }
+
+            MyLog.i(tag, "health {} {}", endpoint.url, healthy);
+            for (HealthListener listener : listeners) {
+                listener.onHealthChanged(endpoint.url, healthy);
+            }
+        }
+
+        private long nextDelayMillis(int failures) {
+            if (failures == 0) return healthyIntervalMillis;
+
+            long backoffMillis = minBackoffMillis << Math.min(failures - 1, 30);
+            if (backoffMillis <= 0 || backoffMillis > maxBackoffMillis) {
+                backoffMillis = maxBackoffMillis;
+            }
+            // half fixed, half random
+            long halfMillis = backoffMillis / 2;
+            return halfMillis + (long) (random.nextDouble() * (backoffMillis - halfMillis));
+        }
+
+        private static class Endpoint {
+            private final String url;
+            private Boolean healthy;
+            private int failures;
+            private int generation;
+            private ScheduledFuture<?> future;
+
+            private Endpoint(String url) {
                 this.url = url;
-                this.result = result;
             }
 
-            public Boolean getResult() {
-                return result;
+            private void cancel() {
+                generation++;
+                if (future != null) {
+                    future.cancel(false);
+                    future = null;
+                }
             }
+        }
+    }
+
+    /**
+     * connectivity changes, debounced
+     * <br>MyNetReceiver posts every CONNECTIVITY_CHANGE broadcast, a burst of them
+     * (e.g. Wi-Fi to cellular handover) is collapsed into a single ConnectivityManager query
+     * once no broadcast arrived for the debounce window
+     * <br>listeners are only told when connected, type or metered actually changed,
+     * on the bus thread (never the main thread)
+     */
+    public static class ConnectivityBus {
+        public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+        private static final ConnectivityBus DEFAULT = new ConnectivityBus(DEFAULT_DEBOUNCE_MILLIS);
+
+        // copy on write, so dispatch never locks and listeners may (un)register from anywhere
+        private final List<ConnectivityListener> listeners = new CopyOnWriteArrayList<>();
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, tag + "-ConnectivityBus");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        private volatile long debounceMillis;
+        private ScheduledFuture<?> pending;
+        private Context context;
+        // only touched on the bus thread
+        private NetworkState published;
+
+        public interface ConnectivityListener {
+            /**
+             * @param previous NULL for the first change seen by the bus
+             */
+            void onConnectivityChanged(NetworkState previous, @NonNull NetworkState current);
+        }
+
+        public ConnectivityBus(long debounceMillis) {
+            setDebounceMillis(debounceMillis);
+        }
+
+        public static ConnectivityBus getDefault() {
+            return DEFAULT;
+        }
 
-            private void setResult(Boolean result) {
-                this.result = result;
-                Log.d(tag, this.url + " " + this.result);
+        public void setDebounceMillis(long debounceMillis) {
+            if (debounceMillis < 0) {
+                throw new IllegalArgumentException("invalid debounce");
             }
+            this.debounceMillis = debounceMillis;
+        }
+
+        public void addListener(@NonNull ConnectivityListener listener) {
+            listeners.add(listener);
+        }
+
+        public void removeListener(@NonNull ConnectivityListener listener) {
+            listeners.remove(listener);
+        }
 
-            public String getUrl() {
-                return url;
+        /**
+         * a connectivity broadcast was received, (re)starts the debounce window
+         */
+        public void post(@NonNull Context context) {
+            synchronized (this) {
+                this.context = context.getApplicationContext();
+                if (pending != null) {
+                    pending.cancel(false);
+                }
+                pending = scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        settle();
+                    }
+                }, debounceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void settle() {
+            Context settleContext;
+            synchronized (this) {
+                pending = null;
+                settleContext = context;
+            }
+
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) settleContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            NetworkState current = updateNetworkState(connectivityManager, networkInfo);
+            if (networkInfo != null) {
+                MyLog.i(tag, "{} {} {}", networkInfo.getTypeName(), networkInfo.getState(),
+                        networkInfo.getDetailedState());
+            } else {
+                MyLog.w(tag, "networkInfo null");
+            }
+
+            NetworkState previous = published;
+            published = current;
+            if (previous != null && previous.isSameNetwork(current)) return;
+
+            // backoff belongs to the previous network
+            HealthMonitor.resetAll();
+            for (ConnectivityListener listener : listeners) {
+                listener.onConnectivityChanged(previous, current);
             }
         }
     }
 
     /**
-     * simple network broadcast receiver
+     * simple network broadcast receiver, feeds ConnectivityBus
      * <br><uses-permission android:name="android.permission.INTERNET" />
      * <br><uses-permission android:name="android.permission.ACCESS_NETWORK_STATE" />
-     * <br>intent-filter:
-     * <br><action android:name="android.net.conn.CONNECTIVITY_CHANGE" />
+     * <br>register it dynamically, from API 24 CONNECTIVITY_ACTION is not delivered to manifest receivers:
+        context.getApplicationContext().registerReceiver(new MyNetTool.MyNetReceiver(),
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+     *
      */
     public static class MyNetReceiver extends BroadcastReceiver {
 
@@ -131,21 +565,17 @@ public class MyNetTool {
         @Override
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
-            Log.i(tag, "!!! MyNetReceiver !!! " + action);
-            if (intent.getExtras() != null) {
-                ConnectivityManager connectivityManager =
-                        (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-                NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-
-                if (networkInfo != null) {
-                    Log.i(tag, networkInfo.getTypeName() + " "
-                            + String.valueOf(networkInfo.getState()) + " "
-                            + String.valueOf(networkInfo.getDetailedState()));
-                } else if (intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, Boolean.FALSE)) {
-                    Log.d(tag, "No connection");
-                } else {
-                    Log.w(tag, "networkInfo null");
+            MyLog.i(tag, "!!! MyNetReceiver !!! {}", action);
+            if (ConnectivityManager.CONNECTIVITY_ACTION.equals(action)) {
+                // cached reachability belongs to the previous network, drop it right away
+                MyNetProbe.ReachabilityCache.getDefault().invalidateAll();
+                MyNetProbe.WarmConnections.getDefault().invalidateAll();
+                networkState = null;
+                if (intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, Boolean.FALSE)) {
+                    MyLog.d(tag, "No connection");
                 }
+                // ConnectivityManager query, health monitors and listeners once the burst settles
+                ConnectivityBus.getDefault().post(context);
             }
         }
     }
@@ -1,4 +1,7 @@
+package com.samp.ling.sampleapp.utils;
+
 import android.app.Activity;
+import android.app.Application;
 import android.app.Dialog;
 import android.app.DialogFragment;
 import android.app.FragmentManager;
@@ -11,6 +14,8 @@ import android.content.pm.PackageManager;
 import android.content.pm.PermissionInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
@@ -18,10 +23,39 @@ import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AlertDialog;
 import android.text.TextUtils;
-import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <pre>
@@ -35,7 +69,7 @@ import java.util.Set;
 public class MyPermissions {
     private static final String TAG = MyPermissions.class.getSimpleName();
 
-    // for firstTime detection
+    // previous firstTime detection store, migrated by FirstTimeStore
     private static final String PREFERENCE_KEY = TAG;
 
     /**
@@ -85,6 +119,168 @@ public class MyPermissions {
         public static final int NO_RATIONALE = 8;
     }
 
+    /**
+     * <pre>
+     * RequestState of (stage, granted, rationale, firstTime) as a precomputed table,
+     * one array read, no branches on the inputs, no allocation, any thread
+     * entries are packed: RequestState in the low bits (STATE_MASK),
+     * plus SHOW_RATIONALE if a rationale may be shown before requesting (BEFORE only):
+     * Later, or First Time, but not Don't Ask Again (FIRST and not firstTime)
+     * </pre>
+     */
+    public static class StateTable {
+        public static final int STATE_MASK = 0x0f;
+        public static final int SHOW_RATIONALE = 0x10;
+
+        // index: stage (other, BEFORE, AFTER) | granted | rationale | firstTime
+        private static final byte[] TABLE = {
+                // other stages
+                RequestState.NO_RATIONALE, RequestState.NO_RATIONALE,
+                RequestState.RATIONALE, RequestState.RATIONALE,
+                RequestState.GRANTED, RequestState.GRANTED, RequestState.GRANTED, RequestState.GRANTED,
+                // BEFORE
+                RequestState.FIRST, RequestState.FIRST | SHOW_RATIONALE,
+                RequestState.LATER | SHOW_RATIONALE, RequestState.LATER | SHOW_RATIONALE,
+                RequestState.GRANTED, RequestState.GRANTED, RequestState.GRANTED, RequestState.GRANTED,
+                // AFTER
+                RequestState.DONT, RequestState.DONT,
+                RequestState.DENY, RequestState.DENY,
+                RequestState.ALLOW, RequestState.ALLOW, RequestState.ALLOW, RequestState.ALLOW,
+        };
+
+        /**
+         * packed entry, see getState() and isShowRationale()
+         * @param firstTime only matters BEFORE, for SHOW_RATIONALE
+         */
+        public static int lookup(int stage, boolean granted, boolean rationale, boolean firstTime) {
+            int slot = stage == RequestStage.BEFORE ? 1 : stage == RequestStage.AFTER ? 2 : 0;
+            return TABLE[slot << 3 | (granted ? 4 : 0) | (rationale ? 2 : 0) | (firstTime ? 1 : 0)];
+        }
+
+        public static int getState(int entry) {
+            return entry & STATE_MASK;
+        }
+
+        public static boolean isShowRationale(int entry) {
+            return (entry & SHOW_RATIONALE) != 0;
+        }
+    }
+
+    /**
+     * <pre>
+     * per permission log of BEFORE | AFTER transitions (see RequestState),
+     * so "1st time deny" and "later don't ask again" are told apart without asking again
+     * resolvePermissions() records BEFORE, permissionsDenied() pairs it with AFTER
+     * one int per permission: the pending BEFORE state and the last 3 transitions,
+     * a transition packs BEFORE << 4 | AFTER (0 BEFORE if it wasn't seen)
+     * </pre>
+     */
+    public static class TransitionLog {
+        public static final int NONE = 0;
+
+        private static final int HISTORY = 3;
+        private static final int PENDING_SHIFT = 24;
+        private static final int STATE_BITS = 0x0f;
+        private static final TransitionLog DEFAULT = new TransitionLog();
+
+        private final ConcurrentHashMap<String, AtomicInteger> entries = new ConcurrentHashMap<>();
+
+        private TransitionLog() {
+        }
+
+        public static TransitionLog getDefault() {
+            return DEFAULT;
+        }
+
+        public void recordBefore(@NonNull String permission, int beforeState) {
+            AtomicInteger entry = entry(permission);
+            int packed;
+            do {
+                packed = entry.get();
+            } while (!entry.compareAndSet(packed,
+                    (packed & 0xffffff) | (beforeState & STATE_BITS) << PENDING_SHIFT));
+        }
+
+        /**
+         * pairs afterState with the pending BEFORE state
+         */
+        public void recordAfter(@NonNull String permission, int afterState) {
+            AtomicInteger entry = entry(permission);
+            int packed;
+            int updated;
+            do {
+                packed = entry.get();
+                int transition = (packed >>> PENDING_SHIFT) << 4 | (afterState & STATE_BITS);
+                updated = (packed << 8 | transition) & 0xffffff;
+            } while (!entry.compareAndSet(packed, updated));
+        }
+
+        /**
+         * last transition of permission, NONE if none yet
+         */
+        public int getLast(@NonNull String permission) {
+            return getHistory(permission, 0);
+        }
+
+        /**
+         * @param age 0 for the last transition, up to 2 for older ones
+         * @return NONE if none that old
+         */
+        public int getHistory(@NonNull String permission, int age) {
+            if (age < 0 || age >= HISTORY) {
+                throw new IllegalArgumentException("invalid age");
+            }
+            AtomicInteger entry = entries.get(permission);
+            return entry == null ? NONE : entry.get() >>> (age * 8) & 0xff;
+        }
+
+        public void clear() {
+            entries.clear();
+        }
+
+        public static int getBefore(int transition) {
+            return transition >>> 4 & STATE_BITS;
+        }
+
+        public static int getAfter(int transition) {
+            return transition & STATE_BITS;
+        }
+
+        /**
+         * "1st time deny", "later don't ask again"... as in RequestState
+         */
+        public static String describe(int transition) {
+            int before = getBefore(transition);
+            int after = getAfter(transition);
+            if (transition == NONE) return "none";
+            if (before == RequestState.GRANTED) return "already allow (granted)";
+
+            String when = before == RequestState.FIRST ? "1st time " : before == RequestState.LATER ? "later " : "";
+            switch (after) {
+                case RequestState.ALLOW:
+                    return when + "allow";
+                case RequestState.DENY:
+                    return when + "deny";
+                case RequestState.DONT:
+                    return before == RequestState.FIRST ? "already don't ask again" : when + "don't ask again";
+                default:
+                    return when + after;
+            }
+        }
+
+        private AtomicInteger entry(String permission) {
+            AtomicInteger entry = entries.get(permission);
+            if (entry == null) {
+                entry = new AtomicInteger();
+                AtomicInteger raced = entries.putIfAbsent(permission, entry);
+                if (raced != null) {
+                    entry = raced;
+                }
+            }
+            return entry;
+        }
+    }
+
     /**
      * TRUE if granted
      */
@@ -94,7 +290,9 @@ public class MyPermissions {
 
         boolean granted = (ContextCompat.checkSelfPermission(context, permission)
                 == PackageManager.PERMISSION_GRANTED);
-        Log.i(TAG, "checkSelf " + getPermissionName(permission) + " Granted:" + granted);
+        if (MyLog.ENABLED && MyLog.isLoggable(MyLog.INFO)) {
+            MyLog.i(TAG, "checkSelf {} Granted:{}", getPermissionName(permission), granted);
+        }
 
         return granted;
     }
@@ -104,7 +302,9 @@ public class MyPermissions {
         if (TextUtils.isEmpty(permission)) return false;
 
         boolean rationale = ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
-        Log.i(TAG, "shouldShow " + getPermissionName(permission) + " Rationale:" + rationale);
+        if (MyLog.ENABLED && MyLog.isLoggable(MyLog.INFO)) {
+            MyLog.i(TAG, "shouldShow {} Rationale:{}", getPermissionName(permission), rationale);
+        }
 
         return rationale;
     }
@@ -124,44 +324,168 @@ public class MyPermissions {
             throw new IllegalArgumentException("invalid permission");
         }
 
-        Log.d(TAG, "getState " + getPermissionName(permission) + " Stage:" + stage);
+        if (MyLog.ENABLED && MyLog.isLoggable(MyLog.DEBUG)) {
+            MyLog.d(TAG, "getState {} Stage:{}", getPermissionName(permission), stage);
+        }
         boolean granted = MyPermissions.checkSelfPermission(activity, permission);
         boolean rationale = MyPermissions.shouldShowRequestPermissionRationale(activity, permission);
-        int state;
+        int state = StateTable.getState(StateTable.lookup(stage, granted, rationale, false));
 
-        if (stage == RequestStage.BEFORE) {
-            if (granted) {
-                state = RequestState.GRANTED;
-            } else {
-                if (rationale) {
-                    state = RequestState.LATER;
-                } else {
-                    state = RequestState.FIRST;
-                }
+        return state;
+    }
+
+    /**
+     * BEFORE stage of a whole permission array in one pass, for checkPermissions()
+     * <br>shouldShowRequestPermissionRationale() is only asked for permissions not granted,
+     * the first-time flags are bit tests, updated in a single (background) write, see FirstTimeStore
+     * <br>empty and repeated permissions are skipped
+     */
+    public static PermissionStates resolvePermissions(@NonNull Activity activity,
+                                                      @NonNull String[] permissions) {
+        int permissionsSize = permissions.length;
+        PermissionStates permissionStates = new PermissionStates(permissions);
+        FirstTimeStore firstTimeStore = null;
+        BitSet firstTimes = null;
+        TransitionLog transitionLog = TransitionLog.getDefault();
+
+        for (int i = 0; i < permissionsSize; i++) {
+            String permission = permissions[i];
+            if (TextUtils.isEmpty(permission) || indexOf(permissions, permission) != i) continue;
+
+            if (ContextCompat.checkSelfPermission(activity, permission)
+                    == PackageManager.PERMISSION_GRANTED) {
+                permissionStates.states[i] = RequestState.GRANTED;
+                transitionLog.recordBefore(permission, RequestState.GRANTED);
+                continue;
             }
-        } else if (stage == RequestStage.AFTER) {
-            if (granted) {
-                state = RequestState.ALLOW;
-            } else {
-                if (rationale) {
-                    state = RequestState.DENY;
-                } else {
-                    state = RequestState.DONT;
-                }
+            boolean rationale = ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
+            permissionStates.toAsk.set(i);
+
+            // IMPORTANT!
+            // if showing rationale is desired for First Time requests
+            // without knowing getPermissionState() @ Stage.AFTER yet
+            // FirstTimeStore is needed to differentiate First Time and Don't Ask Again
+            if (firstTimeStore == null) {
+                firstTimeStore = FirstTimeStore.getDefault(activity);
             }
-        } else {
-            if (granted) {
-                state = RequestState.GRANTED;
-            } else {
-                if (rationale) {
-                    state = RequestState.RATIONALE;
-                } else {
-                    state = RequestState.NO_RATIONALE;
+            boolean firstTime = firstTimeStore.isFirstTime(permission);
+
+            // to also include rationale for First Time
+            // (because shouldShowRequestPermissionRationale() will return false)
+            // but not if permissions are Don't Ask Again
+            // (warnPermissions() will handle that), see StateTable.SHOW_RATIONALE
+            int entry = StateTable.lookup(RequestStage.BEFORE, false, rationale, firstTime);
+            permissionStates.states[i] = StateTable.getState(entry);
+            transitionLog.recordBefore(permission, permissionStates.states[i]);
+            if (StateTable.isShowRationale(entry)) {
+                permissionStates.toShowRationale.set(i);
+                if (firstTime) {
+                    if (firstTimes == null) {
+                        firstTimes = new BitSet(permissionsSize);
+                    }
+                    firstTimes.set(i);
                 }
             }
         }
 
-        return state;
+        if (firstTimes != null) {
+            String[] asked = new String[firstTimes.cardinality()];
+            int j = 0;
+            for (int i = firstTimes.nextSetBit(0); i >= 0; i = firstTimes.nextSetBit(i + 1)) {
+                asked[j++] = permissions[i];
+            }
+            firstTimeStore.markAsked(asked);
+        }
+        MyLog.d(TAG, "resolved[] x{} {}", permissionsSize, permissionStates);
+
+        return permissionStates;
+    }
+
+    private static int indexOf(String[] permissions, String permission) {
+        for (int i = 0; i < permissions.length; i++) {
+            if (permission.equals(permissions[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * result of resolvePermissions(), indexed like the permissions it was given
+     * <br>state is a RequestState (BEFORE stage), 0 for skipped permissions
+     */
+    public static class PermissionStates {
+        private final String[] permissions;
+        private final int[] states;
+        private final BitSet toAsk;
+        private final BitSet toShowRationale;
+
+        private PermissionStates(String[] permissions) {
+            this.permissions = permissions;
+            this.states = new int[permissions.length];
+            this.toAsk = new BitSet(permissions.length);
+            this.toShowRationale = new BitSet(permissions.length);
+        }
+
+        public int size() {
+            return permissions.length;
+        }
+
+        public String getPermission(int index) {
+            return permissions[index];
+        }
+
+        public int getState(int index) {
+            return states[index];
+        }
+
+        /**
+         * TRUE if not granted, so to be requested
+         */
+        public boolean isToAsk(int index) {
+            return toAsk.get(index);
+        }
+
+        /**
+         * TRUE if a rationale may be shown before requesting (not Don't Ask Again)
+         */
+        public boolean isToShowRationale(int index) {
+            return toShowRationale.get(index);
+        }
+
+        public int getToAskCount() {
+            return toAsk.cardinality();
+        }
+
+        public int getToShowRationaleCount() {
+            return toShowRationale.cardinality();
+        }
+
+        /**
+         * permissions to be requested, in the given order
+         */
+        public String[] getToAskPermissions() {
+            String[] toAskPermissions = new String[toAsk.cardinality()];
+            int j = 0;
+            for (int i = toAsk.nextSetBit(0); i >= 0; i = toAsk.nextSetBit(i + 1)) {
+                toAskPermissions[j++] = permissions[i];
+            }
+            return toAskPermissions;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder stringBuilder = new StringBuilder();
+            for (int i = 0; i < permissions.length; i++) {
+                if (states[i] == 0) continue;
+                if (stringBuilder.length() > 0) {
+                    stringBuilder.append(", ");
+                }
+                stringBuilder.append(getPermissionName(permissions[i])).append('=').append(states[i]);
+                if (toShowRationale.get(i)) {
+                    stringBuilder.append('r');
+                }
+            }
+            return stringBuilder.toString();
+        }
     }
 
     /**
@@ -202,56 +526,16 @@ public class MyPermissions {
      */
     public static void checkPermissions(@NonNull Activity activity, @NonNull String[] permissions,
                                         int requestCode, String rationaleMessage) {
-        Log.d(TAG, "checkingPermissions[] x" + permissions.length);
+        MyLog.d(TAG, "checkingPermissions[] x{}", permissions.length);
         if (permissions.length <= 0) return;
 
-        Set<String> toAskPermissions = new HashSet<>();
-        Set<String> toShowRationales = new HashSet<>();
-
-        for (String permission : permissions) {
-            Log.i(TAG, permission);
-
-            if (!TextUtils.isEmpty(permission)) {
-                int permissionState = MyPermissions.getPermissionState(activity, permission,
-                        RequestStage.BEFORE);
-
-                if (permissionState != RequestState.GRANTED) {
-                    toAskPermissions.add(permission);
-
-                    boolean firstState = permissionState == RequestState.FIRST;
-
-                    // IMPORTANT!
-                    // if showing rationale is desired for First Time requests
-                    // without knowing getPermissionState() @ Stage.AFTER yet
-                    // sharedPreferences is needed to differentiate First Time and Don't Ask Again
-                    SharedPreferences sharedPreferences = activity.getSharedPreferences(PREFERENCE_KEY,
-                            Context.MODE_PRIVATE);
-                    boolean firstTime = sharedPreferences.getBoolean(permission, true);
-
-                    // to also include rationale for First Time
-                    // (because shouldShowRequestPermissionRationale() will return false)
-                    // but not if permissions are Don't Ask Again
-                    // (warnPermissions() will handle that)
-                    // firstState | firstTime
-                    // T F = Don't Ask Again
-                    // T T = First Time
-                    // F F = Not First Time
-                    // F T = should never happen
-                    Log.d(TAG, "firstState " + firstState + ", firstTime " + firstTime);
-                    if (!(firstState & !firstTime)) {
-                        toShowRationales.add(permission);
-                        sharedPreferences.edit().putBoolean(permission, false).apply();
-                    }
-                }
-            }
-        }
-
-        int toAskSize = toAskPermissions.size();
-        int toShowSize = toShowRationales.size();
-        Log.d(TAG, "check >> p" + toAskSize + "/r" + toShowSize);
+        PermissionStates permissionStates = MyPermissions.resolvePermissions(activity, permissions);
+        int toAskSize = permissionStates.getToAskCount();
+        int toShowSize = permissionStates.getToShowRationaleCount();
+        MyLog.d(TAG, "check >> p{}/r{}", toAskSize, toShowSize);
 
         if (toAskSize > 0) {
-            String[] doCheckPermissions = toAskPermissions.toArray(new String[toAskSize]);
+            String[] doCheckPermissions = permissionStates.getToAskPermissions();
 
             if (toShowSize > 0 && !TextUtils.isEmpty(rationaleMessage)) {
                 FragmentManager fm = activity.getFragmentManager();
@@ -281,25 +565,476 @@ public class MyPermissions {
 
     /**
      * get permission's group short-name
+     * <br>served by PermissionMetaCache, only the first lookup of a permission asks the PackageManager
      */
     public static String getPermissionGroup(@NonNull Context context, @NonNull String permission) {
-        PackageManager packageManager = context.getPackageManager();
-        String permissionGroup = null;
+        return PermissionMetaCache.getDefault().get(context, permission).getGroup();
+    }
 
-        try {
-            PermissionInfo permissionGroupInfo = packageManager.getPermissionInfo(permission, 0);
-            permissionGroup = permissionGroupInfo.group;
-            if (!TextUtils.isEmpty(permissionGroup)) {
-                int index = permissionGroup.lastIndexOf(".");
-                if (index != -1) {
-                    permissionGroup = permissionGroup.substring(index + 1);
+    /**
+     * what the PackageManager declares for a permission, short-names only
+     */
+    public static class PermissionMeta {
+        public static final int PROTECTION_UNKNOWN = -1;
+
+        private final String name;
+        private final String group;
+        private final int protectionLevel;
+
+        PermissionMeta(String name, String group, int protectionLevel) {
+            this.name = name;
+            this.group = group;
+            this.protectionLevel = protectionLevel;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * NULL if the permission has no group or is unknown
+         */
+        public String getGroup() {
+            return group;
+        }
+
+        /**
+         * PermissionInfo.protectionLevel, PROTECTION_UNKNOWN if the permission is unknown
+         */
+        public int getProtectionLevel() {
+            return protectionLevel;
+        }
+
+        public boolean isDangerous() {
+            return protectionLevel != PROTECTION_UNKNOWN
+                    && (protectionLevel & PermissionInfo.PROTECTION_MASK_BASE) == PermissionInfo.PROTECTION_DANGEROUS;
+        }
+    }
+
+    /**
+     * <pre>
+     * process-wide PermissionMeta cache, permission to group mappings don't change while the process lives
+     * filled lazily, one PackageManager lookup per permission, reads are lock-free from any thread
+     * preload() at app start, so onRequestPermissionsResult() never waits on the PackageManager:
+        MyPermissions.PermissionMetaCache.getDefault().preload(getApplicationContext());
+     * </pre>
+     */
+    public static class PermissionMetaCache {
+        private static final PermissionMetaCache DEFAULT = new PermissionMetaCache();
+
+        private final ConcurrentHashMap<String, PermissionMeta> metas = new ConcurrentHashMap<>();
+
+        private PermissionMetaCache() {
+        }
+
+        public static PermissionMetaCache getDefault() {
+            return DEFAULT;
+        }
+
+        /**
+         * cached metadata, looked up (and cached) on first use
+         */
+        public PermissionMeta get(@NonNull Context context, @NonNull String permission) {
+            PermissionMeta meta = metas.get(permission);
+            if (meta != null) return meta;
+
+            meta = lookup(context.getPackageManager(), permission);
+            PermissionMeta raced = metas.putIfAbsent(permission, meta);
+            return raced != null ? raced : meta;
+        }
+
+        /**
+         * cached metadata only, NULL if not looked up yet
+         */
+        public PermissionMeta peek(@NonNull String permission) {
+            return metas.get(permission);
+        }
+
+        /**
+         * looks up every permission requested in the app's manifest on a background thread
+         */
+        public void preload(@NonNull Context context) {
+            preload(context, (String[]) null);
+        }
+
+        /**
+         * looks up permissions on a background thread
+         * @param permissions NULL for every permission requested in the app's manifest
+         */
+        public void preload(@NonNull Context context, final String... permissions) {
+            final Context appContext = context.getApplicationContext() != null
+                    ? context.getApplicationContext() : context;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    String[] toLoad = permissions != null ? permissions : requestedPermissions(appContext);
+                    for (String permission : toLoad) {
+                        if (!TextUtils.isEmpty(permission)) {
+                            get(appContext, permission);
+                        }
+                    }
+                    MyLog.d(TAG, "preloaded x{}", toLoad.length);
+                }
+            }, TAG + "-preload");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public int size() {
+            return metas.size();
+        }
+
+        private static PermissionMeta lookup(PackageManager packageManager, String permission) {
+            String name = getPermissionName(permission);
+            try {
+                PermissionInfo permissionInfo = packageManager.getPermissionInfo(permission, 0);
+                String permissionGroup = permissionInfo.group;
+                if (!TextUtils.isEmpty(permissionGroup)) {
+                    permissionGroup = getPermissionName(permissionGroup);
+                }
+                return new PermissionMeta(name, permissionGroup, permissionInfo.protectionLevel);
+            } catch (PackageManager.NameNotFoundException e) {
+                e.printStackTrace();
+                return new PermissionMeta(name, null, PermissionMeta.PROTECTION_UNKNOWN);
+            }
+        }
+
+        private static String[] requestedPermissions(Context context) {
+            try {
+                String[] requestedPermissions = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS)
+                        .requestedPermissions;
+                return requestedPermissions != null ? requestedPermissions : new String[0];
+            } catch (PackageManager.NameNotFoundException e) {
+                e.printStackTrace();
+                return new String[0];
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * which permissions were requested before, for First Time detection in checkPermissions()
+     * kept as a bitset: the runtime permissions have fixed bit positions (KNOWN_PERMISSIONS),
+     * others get the next free position the first time they are seen
+     * persisted to a small binary file, written on a background thread, a burst of changes
+     * is coalesced into one write
+     * the booleans of the previous SharedPreferences store (PREFERENCE_KEY) are migrated
+     * on first load, then cleared
+     * a file written by a newer version is read but never written, so its flags survive a downgrade
+     * </pre>
+     */
+    public static class FirstTimeStore {
+        private static final String FILE_NAME = TAG + ".bin";
+        // "MPF" + format version
+        private static final int MAGIC = 0x4d504601;
+
+        // bit positions are persisted: only ever append, never reorder or remove,
+        // a stored extra that became known is moved to its known bit on load
+        private static final String[] KNOWN_PERMISSIONS = {
+                "android.permission.READ_CALENDAR",
+                "android.permission.WRITE_CALENDAR",
+                "android.permission.CAMERA",
+                "android.permission.READ_CONTACTS",
+                "android.permission.WRITE_CONTACTS",
+                "android.permission.GET_ACCOUNTS",
+                "android.permission.ACCESS_FINE_LOCATION",
+                "android.permission.ACCESS_COARSE_LOCATION",
+                "android.permission.RECORD_AUDIO",
+                "android.permission.READ_PHONE_STATE",
+                "android.permission.READ_PHONE_NUMBERS",
+                "android.permission.CALL_PHONE",
+                "android.permission.ANSWER_PHONE_CALLS",
+                "android.permission.READ_CALL_LOG",
+                "android.permission.WRITE_CALL_LOG",
+                "com.android.voicemail.permission.ADD_VOICEMAIL",
+                "android.permission.USE_SIP",
+                "android.permission.PROCESS_OUTGOING_CALLS",
+                "android.permission.BODY_SENSORS",
+                "android.permission.SEND_SMS",
+                "android.permission.RECEIVE_SMS",
+                "android.permission.READ_SMS",
+                "android.permission.RECEIVE_WAP_PUSH",
+                "android.permission.RECEIVE_MMS",
+                "android.permission.READ_EXTERNAL_STORAGE",
+                "android.permission.WRITE_EXTERNAL_STORAGE",
+                "android.permission.ACCESS_BACKGROUND_LOCATION",
+                "android.permission.ACTIVITY_RECOGNITION",
+                "android.permission.ACCESS_MEDIA_LOCATION",
+        };
+
+        private static volatile FirstTimeStore instance;
+
+        private final File file;
+        private final ConcurrentHashMap<String, Integer> positions = new ConcurrentHashMap<>();
+        // permissions past KNOWN_PERMISSIONS, in position order, guarded by this
+        private final List<String> extras = new ArrayList<>();
+        // copy on write, so isFirstTime() is a lock-free bit test
+        private volatile long[] asked = new long[1];
+        private final AtomicBoolean writePending = new AtomicBoolean();
+        // the file is a newer version's, set by load() before the store is used
+        private boolean readOnly;
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "-FirstTimeStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        private FirstTimeStore(File file) {
+            this.file = file;
+            for (int i = 0; i < KNOWN_PERMISSIONS.length; i++) {
+                positions.put(KNOWN_PERMISSIONS[i], i);
+            }
+        }
+
+        /**
+         * process-wide store, loaded (or migrated) on first use
+         */
+        public static FirstTimeStore getDefault(@NonNull Context context) {
+            FirstTimeStore store = instance;
+            if (store == null) {
+                synchronized (FirstTimeStore.class) {
+                    store = instance;
+                    if (store == null) {
+                        store = new FirstTimeStore(new File(context.getFilesDir(), FILE_NAME));
+                        if (!store.load()) {
+                            store.migrate(context);
+                        }
+                        instance = store;
+                    }
+                }
+            }
+            return store;
+        }
+
+        /**
+         * TRUE if permission was never requested
+         */
+        public boolean isFirstTime(@NonNull String permission) {
+            Integer position = positions.get(permission);
+            if (position == null) return true;
+
+            long[] words = asked;
+            int word = position >>> 6;
+            return word >= words.length || (words[word] & (1L << position)) == 0;
+        }
+
+        /**
+         * records permissions as requested, persisted in one (background) write
+         */
+        public void markAsked(@NonNull String... permissions) {
+            boolean changed = false;
+            synchronized (this) {
+                long[] words = asked;
+                for (String permission : permissions) {
+                    if (TextUtils.isEmpty(permission)) continue;
+
+                    int position = position(permission);
+                    int word = position >>> 6;
+                    if (word >= words.length) {
+                        words = Arrays.copyOf(words, word + 1);
+                    } else if ((words[word] & (1L << position)) != 0) {
+                        continue;
+                    } else if (words == asked) {
+                        words = words.clone();
+                    }
+                    words[word] |= 1L << position;
+                    changed = true;
+                }
+                asked = words;
+            }
+            if (changed) {
+                scheduleWrite();
+            }
+        }
+
+        /**
+         * forgets every request, e.g. after the app's permissions were reset
+         */
+        public void clear() {
+            synchronized (this) {
+                asked = new long[1];
+            }
+            scheduleWrite();
+        }
+
+        // caller holds this
+        private int position(String permission) {
+            Integer position = positions.get(permission);
+            if (position == null) {
+                position = KNOWN_PERMISSIONS.length + extras.size();
+                extras.add(permission);
+                positions.put(permission, position);
+            }
+            return position;
+        }
+
+        private void scheduleWrite() {
+            // a write already queued will pick up this change too
+            if (!writePending.compareAndSet(false, true)) return;
+
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writePending.set(false);
+                    write();
+                }
+            });
+        }
+
+        /**
+         * MAGIC, KNOWN_PERMISSIONS count, extra permissions (count, names), asked bitset (count, words)
+         * <br>written to a temporary file then renamed, so a crash never leaves half a file
+         * @return TRUE once renamed into place
+         */
+        private boolean write() {
+            if (readOnly) return false;
+
+            String[] extraPermissions;
+            long[] words;
+            synchronized (this) {
+                extraPermissions = extras.toArray(new String[extras.size()]);
+                words = asked;
+            }
+
+            File temp = new File(file.getPath() + ".tmp");
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                out.writeInt(MAGIC);
+                out.writeShort(KNOWN_PERMISSIONS.length);
+                out.writeShort(extraPermissions.length);
+                for (String permission : extraPermissions) {
+                    out.writeUTF(permission);
+                }
+                out.writeShort(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+                out.close();
+                out = null;
+                if (temp.renameTo(file)) return true;
+                MyLog.w(TAG, "FirstTimeStore not saved: {}", file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * FALSE if there is no (readable) file yet
+         * <br>a newer version's file makes the store read-only, its flags stay in memory only
+         */
+        private boolean load() {
+            if (!file.exists()) return false;
+
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                int magic = in.readInt();
+                if (magic != MAGIC) {
+                    if (magic >>> 8 == MAGIC >>> 8 && (magic & 0xff) > (MAGIC & 0xff)) {
+                        MyLog.w(TAG, "FirstTimeStore newer format, not written: {}", file);
+                        readOnly = true;
+                    } else {
+                        MyLog.w(TAG, "FirstTimeStore unknown format: {}", file);
+                    }
+                    return false;
+                }
+                int knownCount = in.readUnsignedShort();
+                if (knownCount > KNOWN_PERMISSIONS.length) {
+                    // a newer version's known permissions past ours are not known here by name
+                    MyLog.w(TAG, "FirstTimeStore newer version, not written: {}", file);
+                    readOnly = true;
+                }
+
+                // stored bit -> our bit, known bits never move, extras are renumbered after ours
+                int extraCount = in.readUnsignedShort();
+                int[] moved = new int[extraCount];
+                for (int i = 0; i < extraCount; i++) {
+                    String permission = in.readUTF();
+                    Integer position = positions.get(permission);
+                    if (position == null) {
+                        position = KNOWN_PERMISSIONS.length + extras.size();
+                        positions.put(permission, position);
+                        extras.add(permission);
+                    }
+                    moved[i] = position;
+                }
+                long[] stored = new long[in.readUnsignedShort()];
+                for (int i = 0; i < stored.length; i++) {
+                    stored[i] = in.readLong();
+                }
+
+                long[] words = new long[Math.max(1, (KNOWN_PERMISSIONS.length + extras.size() + 63) >>> 6)];
+                for (int bit = 0; bit < stored.length << 6; bit++) {
+                    if ((stored[bit >>> 6] & (1L << bit)) == 0) continue;
+
+                    int position = bit < knownCount ? (bit < KNOWN_PERMISSIONS.length ? bit : -1)
+                            : bit - knownCount < extraCount ? moved[bit - knownCount] : -1;
+                    if (position >= 0) {
+                        words[position >>> 6] |= 1L << position;
+                    }
+                }
+                asked = words;
+                if (knownCount < KNOWN_PERMISSIONS.length) {
+                    scheduleWrite();
+                }
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
                 }
             }
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
         }
 
-        return permissionGroup;
+        /**
+         * imports the previous SharedPreferences store (FALSE = requested before),
+         * clears it once written
+         */
+        private void migrate(Context context) {
+            SharedPreferences sharedPreferences = context.getSharedPreferences(PREFERENCE_KEY,
+                    Context.MODE_PRIVATE);
+            Map<String, ?> entries = sharedPreferences.getAll();
+            List<String> askedPermissions = new ArrayList<>();
+            for (Map.Entry<String, ?> entry : entries.entrySet()) {
+                if (Boolean.FALSE.equals(entry.getValue())) {
+                    askedPermissions.add(entry.getKey());
+                }
+            }
+            MyLog.d(TAG, "FirstTimeStore migrating x{}", askedPermissions.size());
+
+            markAsked(askedPermissions.toArray(new String[askedPermissions.size()]));
+            // also written when nothing was migrated, so the preferences are never parsed again,
+            // which are only cleared once the file is in place (else the next start migrates again)
+            final SharedPreferences migrated = entries.isEmpty() ? null : sharedPreferences;
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (write() && migrated != null) {
+                        migrated.edit().clear().apply();
+                    }
+                }
+            });
+        }
     }
 
     /**
@@ -379,7 +1114,7 @@ public class MyPermissions {
      * designed for activity:
      * public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults)
      *
-     * returns a functional AlertDialog warning, warnPermissions()
+     * returns a functional AlertDialog warning, warnPermissionGroups()
      * if a permission was set to "don't ask again",
      * note: can be expanded to show other states
      *
@@ -391,15 +1126,15 @@ public class MyPermissions {
                             MyPermissions.permissionsDenied(MainActivity.this, permissions, grantResults);
 
                     // disable functions and warn about permissions not granted
-                    Set<String> permissionGroupsNotGranted = permissionsDenyResult.getAllNotGranted();
-                    if (permissionGroupsNotGranted != null) {
+                    MyPermissions.GroupSet permissionGroupsNotGranted = permissionsDenyResult.getNotGranted();
+                    if (!permissionGroupsNotGranted.isEmpty()) {
                         for (String permissionGroup : permissionGroupsNotGranted) {
                             // disable functions here
                         }
 
                         // warnings
-                        Set<String> permissionGroupsDontAsked = permissionsDenyResult.getPermissionGroupsDontAsked();
-                        MyPermissions.warnPermissions(MainActivity.this, permissionGroupsDontAsked);
+                        MyPermissions.GroupSet permissionGroupsDontAsked = permissionsDenyResult.getDontAskAgain();
+                        MyPermissions.warnPermissionGroups(MainActivity.this, permissionGroupsDontAsked);
                     }
                     return;
                 }
@@ -416,88 +1151,612 @@ public class MyPermissions {
         int grantResultsSize = grantResults.length;
         if (permissionsSize <= 0 || grantResultsSize <= 0) return null;
         if (permissionsSize != grantResultsSize) {
-            Log.w(TAG, "permissionsDenied[] x" + permissionsSize
-                    + " != grantResults[] x" + grantResultsSize);
+            MyLog.w(TAG, "permissionsDenied[] x{} != grantResults[] x{}", permissionsSize, grantResultsSize);
             return null;
         }
 
-        // compiling results for possible notification creation
-        Set<String> permissionGroupsDontAsked = null;
-        Set<String> permissionGroupsNotGranted = null;
+        int[] permissionStates = MyPermissions.afterStates(activity, permissions, grantResults);
+        return MyPermissions.denyResult(activity, permissions, permissionStates, null);
+    }
+
+    /**
+     * AFTER stage RequestState per permission, recorded in TransitionLog
+     */
+    private static int[] afterStates(Activity activity, String[] permissions, int[] grantResults) {
+        int permissionsSize = permissions.length;
+        int[] permissionStates = new int[permissionsSize];
+        TransitionLog transitionLog = TransitionLog.getDefault();
 
         for (int i = 0; i < permissionsSize; i++) {
-            Log.d(TAG, permissions[i] + " = " + grantResults[i]);
-            int permissionState = MyPermissions.getPermissionState(activity,
-                    permissions[i],
-                    MyPermissions.RequestStage.AFTER);
-            String permissionGroup = MyPermissions.getPermissionGroup(activity, permissions[i]);
-
-            if (grantResults[i] != PackageManager.PERMISSION_GRANTED) {
-                if (permissionState == MyPermissions.RequestState.DONT) {
-                    if (permissionGroupsDontAsked == null) {
-                        permissionGroupsDontAsked = new HashSet<>();
-                    }
+            MyLog.d(TAG, "{} = {}", permissions[i], grantResults[i]);
+            // grantResults already tell granted, only Don't Ask Again needs asking (AFTER = DONT)
+            boolean granted = grantResults[i] == PackageManager.PERMISSION_GRANTED;
+            boolean rationale = !granted && ActivityCompat.shouldShowRequestPermissionRationale(activity,
+                    permissions[i]);
+            permissionStates[i] = StateTable.getState(StateTable.lookup(RequestStage.AFTER,
+                    granted, rationale, false));
+            transitionLog.recordAfter(permissions[i], permissionStates[i]);
+        }
+        PermissionMonitor.getDefault().update(permissions, grantResults);
 
-                    permissionGroupsDontAsked.add(permissionGroup);
-                    Log.i(TAG, " DONT: " + permissions[i] + ", " + permissionGroup);
-                } else {
-                    if (permissionGroupsNotGranted == null) {
-                        permissionGroupsNotGranted = new HashSet<>();
-                    }
+        return permissionStates;
+    }
 
-                    permissionGroupsNotGranted.add(permissionGroup);
-                    Log.i(TAG, " DENY: " + permissions[i] + ", " + permissionGroup);
-                }
+    /**
+     * @param only NULL for every permission, else only these
+     */
+    private static PermissionsDenyResult denyResult(Context context, String[] permissions,
+                                                    int[] permissionStates, Collection<String> only) {
+        // compiling results for possible notification creation
+        GroupSet.Builder permissionGroupsDontAsked = new GroupSet.Builder();
+        GroupSet.Builder permissionGroupsDenied = new GroupSet.Builder();
+
+        for (int i = 0; i < permissions.length; i++) {
+            if (only != null && !only.contains(permissions[i])) continue;
+
+            String permissionGroup = MyPermissions.getPermissionGroup(context, permissions[i]);
+            if (permissionStates[i] == RequestState.DONT) {
+                permissionGroupsDontAsked.add(permissionGroup);
+                MyLog.i(TAG, " DONT: {}, {}", permissions[i], permissionGroup);
+            } else if (permissionStates[i] == RequestState.DENY) {
+                permissionGroupsDenied.add(permissionGroup);
+                MyLog.i(TAG, " DENY: {}, {}", permissions[i], permissionGroup);
             } else {
-                Log.i(TAG, " GRANT: " + permissions[i] + ", " + permissionGroup);
+                MyLog.i(TAG, " GRANT: {}, {}", permissions[i], permissionGroup);
             }
         }
 
-        return new PermissionsDenyResult(permissionGroupsDontAsked, permissionGroupsNotGranted);
+        return new PermissionsDenyResult(permissionGroupsDontAsked.build(), permissionGroupsDenied.build());
     }
 
     /**
-     * custom class to return denied results, open to design
+     * <pre>
+     * pending MyPermissions.request(), resolves to the PermissionsDenyResult of its permissions
+     * (empty if they were all granted already), cancelled if the system request was interrupted
+     * whenDone() callbacks run on the main thread, unless already done:
+        MyPermissions.request(activity, Manifest.permission.CAMERA).whenDone(new Runnable() {...});
+     * </pre>
      */
-    public static class PermissionsDenyResult {
-        Set<String> permissionGroupsDontAsked, permissionGroupsNotGranted;
+    public static class PermissionRequest extends FutureTask<PermissionsDenyResult> {
+        private static final Callable<PermissionsDenyResult> NONE = new Callable<PermissionsDenyResult>() {
+            @Override
+            public PermissionsDenyResult call() {
+                throw new IllegalStateException("completed by PermissionRequests only");
+            }
+        };
 
-        public PermissionsDenyResult(Set<String> permissionGroupsDontAsked,
-                                     Set<String> permissionGroupsNotGranted) {
-            this.permissionGroupsDontAsked = permissionGroupsDontAsked;
-            this.permissionGroupsNotGranted = permissionGroupsNotGranted;
-            boolean dontAsked = !(permissionGroupsDontAsked == null
-                    || permissionGroupsDontAsked.isEmpty());
-            boolean notGranted = !(permissionGroupsNotGranted == null
-                    || permissionGroupsNotGranted.isEmpty());
-            Log.d(TAG, "dontAsked " + dontAsked + ", notGranted " + notGranted);
+        private final Set<String> permissions;
+        private final List<Runnable> doneCallbacks = new ArrayList<>(1);
+
+        private PermissionRequest(Set<String> permissions) {
+            super(NONE);
+            this.permissions = permissions;
         }
 
-        public Set<String> getPermissionGroupsDontAsked() {
-            return permissionGroupsDontAsked;
+        public Set<String> getPermissions() {
+            return Collections.unmodifiableSet(permissions);
         }
 
-        public Set<String> getAllNotGranted() {
-            if (permissionGroupsNotGranted == null || permissionGroupsDontAsked == null) {
-                if (permissionGroupsNotGranted != null) {
-                    return permissionGroupsNotGranted;
-                } else if (permissionGroupsDontAsked != null) {
-                    return permissionGroupsDontAsked;
-                } else {
-                    return null;
-                }
-            } else {
-                permissionGroupsNotGranted.addAll(permissionGroupsDontAsked);
-                return permissionGroupsNotGranted;
+        /**
+         * a cancelled request no longer counts for the next system request,
+         * one already showing can't be withdrawn, its answer is just not delivered
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                PermissionRequests.getDefault().remove(this);
             }
+            return cancelled;
         }
-    }
 
-    /**
-     * warning of denied permissions based on level of deny
+        @Override
+        public void run() {
+            // completed by PermissionRequests, never run
+        }
+
+        private void complete(PermissionsDenyResult permissionsDenyResult) {
+            set(permissionsDenyResult);
+        }
+
+        /**
+         * runs callback once done (or cancelled), right away if already done
+         */
+        public void whenDone(@NonNull Runnable callback) {
+            synchronized (doneCallbacks) {
+                if (!isDone()) {
+                    doneCallbacks.add(callback);
+                    return;
+                }
+            }
+            callback.run();
+        }
+
+        @Override
+        protected void done() {
+            Runnable[] callbacks;
+            synchronized (doneCallbacks) {
+                callbacks = doneCallbacks.toArray(new Runnable[doneCallbacks.size()]);
+                doneCallbacks.clear();
+            }
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * coalesces MyPermissions.request() calls into as few system requests as possible:
+     * requests made in the same main loop turn share one system request (the union of their
+     * permissions), a request covered by the system request already showing joins it,
+     * others wait for it to finish, the answer fans out to every request
+     * the activity forwards results (with any requestCode, others are left alone):
+        @Override
+        public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+            if (MyPermissions.onRequestPermissionsResult(this, requestCode, permissions, grantResults)) return;
+            ...
+        }
+     * </pre>
+     */
+    public static class PermissionRequests {
+        public static final int REQUEST_CODE = 0x4d50;
+
+        private static final PermissionRequests DEFAULT = new PermissionRequests();
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+        // guarded by this
+        private List<PermissionRequest> pending = new ArrayList<>();
+        private List<PermissionRequest> inFlight;
+        private Set<String> inFlightPermissions;
+        private WeakReference<Activity> activityRef;
+        private boolean flushPosted;
+
+        private PermissionRequests() {
+        }
+
+        public static PermissionRequests getDefault() {
+            return DEFAULT;
+        }
+
+        /**
+         * main thread, like ActivityCompat.requestPermissions()
+         */
+        public PermissionRequest request(@NonNull Activity activity, @NonNull String... permissions) {
+            Set<String> toAsk = new LinkedHashSet<>();
+            for (String permission : permissions) {
+                if (!TextUtils.isEmpty(permission) && ContextCompat.checkSelfPermission(activity, permission)
+                        != PackageManager.PERMISSION_GRANTED) {
+                    toAsk.add(permission);
+                }
+            }
+
+            PermissionRequest permissionRequest = new PermissionRequest(toAsk);
+            if (toAsk.isEmpty()) {
+                permissionRequest.complete(new PermissionsDenyResult(GroupSet.EMPTY, GroupSet.EMPTY));
+                return permissionRequest;
+            }
+
+            synchronized (this) {
+                activityRef = new WeakReference<>(activity);
+                if (inFlight != null && inFlightPermissions.containsAll(toAsk)) {
+                    MyLog.d(TAG, "request x{} joins in flight x{}", toAsk.size(), inFlightPermissions.size());
+                    inFlight.add(permissionRequest);
+                    return permissionRequest;
+                }
+                pending.add(permissionRequest);
+                postFlush();
+            }
+            return permissionRequest;
+        }
+
+        /**
+         * TRUE if requestCode was ours, so handled
+         */
+        public boolean onRequestPermissionsResult(@NonNull Activity activity, int requestCode,
+                                                  String[] permissions, int[] grantResults) {
+            if (requestCode != REQUEST_CODE) return false;
+
+            List<PermissionRequest> waiting;
+            synchronized (this) {
+                waiting = inFlight;
+                inFlight = null;
+                inFlightPermissions = null;
+                activityRef = new WeakReference<>(activity);
+                postFlush();
+            }
+            if (waiting == null) return true;
+
+            boolean interrupted = permissions == null || grantResults == null || permissions.length == 0
+                    || permissions.length != grantResults.length;
+            int[] permissionStates = interrupted ? null
+                    : MyPermissions.afterStates(activity, permissions, grantResults);
+            MyLog.d(TAG, "requested x{} >> {}", interrupted ? 0 : permissions.length, waiting.size());
+            for (PermissionRequest permissionRequest : waiting) {
+                if (interrupted) {
+                    permissionRequest.cancel(false);
+                } else {
+                    permissionRequest.complete(MyPermissions.denyResult(activity, permissions,
+                            permissionStates, permissionRequest.permissions));
+                }
+            }
+            return true;
+        }
+
+        private synchronized void remove(PermissionRequest permissionRequest) {
+            pending.remove(permissionRequest);
+            if (inFlight != null) {
+                inFlight.remove(permissionRequest);
+            }
+        }
+
+        // caller holds this
+        private void postFlush() {
+            if (flushPosted || inFlight != null || pending.isEmpty()) return;
+
+            flushPosted = true;
+            handler.post(flush);
+        }
+
+        private void flush() {
+            Activity activity;
+            String[] toAsk;
+            int requestCount;
+            synchronized (this) {
+                flushPosted = false;
+                if (inFlight != null || pending.isEmpty()) return;
+
+                activity = activityRef != null ? activityRef.get() : null;
+                if (activity == null || activity.isFinishing()) {
+                    // kept for the next request, or the next activity's result
+                    return;
+                }
+
+                Set<String> permissions = new LinkedHashSet<>();
+                for (PermissionRequest permissionRequest : pending) {
+                    permissions.addAll(permissionRequest.permissions);
+                }
+                inFlight = pending;
+                inFlightPermissions = permissions;
+                pending = new ArrayList<>();
+                toAsk = permissions.toArray(new String[permissions.size()]);
+                requestCount = inFlight.size();
+            }
+
+            MyLog.d(TAG, "requesting x{} for {}", toAsk.length, requestCount);
+            MyPermissions.requestPermissions(activity, toAsk, REQUEST_CODE);
+        }
+    }
+
+    /**
+     * future-style request, see PermissionRequests
+     */
+    public static PermissionRequest request(@NonNull Activity activity, @NonNull String... permissions) {
+        return PermissionRequests.getDefault().request(activity, permissions);
+    }
+
+    /**
+     * for Activity.onRequestPermissionsResult(), TRUE if it was a request() result
+     */
+    public static boolean onRequestPermissionsResult(@NonNull Activity activity, int requestCode,
+                                                     String[] permissions, int[] grantResults) {
+        return PermissionRequests.getDefault().onRequestPermissionsResult(activity, requestCode,
+                permissions, grantResults);
+    }
+
+    /**
+     * denied results of permissionsDenied() by permission group, immutable so safe to share across threads
+     * <br>getDontAskAgain(): groups with a permission set to "don't ask again"
+     * <br>getDenied(): groups with a permission denied (asking again is still possible)
+     * <br>getNotGranted(): both
+     * <br>getPermissionGroupsDontAsked() and getAllNotGranted() are the former nullable Set views
+     */
+    public static class PermissionsDenyResult {
+        private final GroupSet dontAskAgain;
+        private final GroupSet denied;
+        private final GroupSet allNotGranted;
+
+        /**
+         * NULL is taken as GroupSet.EMPTY
+         */
+        public PermissionsDenyResult(GroupSet dontAskAgain, GroupSet denied) {
+            this.dontAskAgain = dontAskAgain != null ? dontAskAgain : GroupSet.EMPTY;
+            this.denied = denied != null ? denied : GroupSet.EMPTY;
+            this.allNotGranted = this.dontAskAgain.union(this.denied);
+            MyLog.d(TAG, "dontAsked {}, notGranted {}", !this.dontAskAgain.isEmpty(), !this.denied.isEmpty());
+        }
+
+        /**
+         * @deprecated use PermissionsDenyResult(GroupSet, GroupSet), NULL is taken as no groups
+         */
+        @Deprecated
+        public PermissionsDenyResult(Set<String> permissionGroupsDontAsked,
+                                     Set<String> permissionGroupsNotGranted) {
+            this(GroupSet.of(permissionGroupsDontAsked), GroupSet.of(permissionGroupsNotGranted));
+        }
+
+        public GroupSet getDontAskAgain() {
+            return dontAskAgain;
+        }
+
+        public GroupSet getDenied() {
+            return denied;
+        }
+
+        public GroupSet getNotGranted() {
+            return allNotGranted;
+        }
+
+        /**
+         * @deprecated use getDontAskAgain(), a new Set on each call, NULL if none
+         */
+        @Deprecated
+        public Set<String> getPermissionGroupsDontAsked() {
+            return toSet(dontAskAgain);
+        }
+
+        /**
+         * @deprecated use getNotGranted(), a new Set on each call, NULL if none
+         */
+        @Deprecated
+        public Set<String> getAllNotGranted() {
+            return toSet(allNotGranted);
+        }
+
+        private static Set<String> toSet(GroupSet groupSet) {
+            if (groupSet.isEmpty()) return null;
+
+            Set<String> groups = new HashSet<>();
+            for (String group : groupSet) {
+                groups.add(group);
+            }
+            return groups;
+        }
+
+        @Override
+        public String toString() {
+            return "dontAskAgain " + dontAskAgain + ", denied " + denied;
+        }
+    }
+
+    /**
+     * <pre>
+     * process-wide permission group short-name to small int id table, ids are never reused
+     * id 0 stands for no (or an unknown) group
+     * </pre>
+     */
+    public static class GroupIds {
+        public static final int NO_GROUP = 0;
+
+        private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        // copy on write, indexed by id
+        private static volatile String[] names = new String[] {null};
+
+        private GroupIds() {
+        }
+
+        public static int idOf(String group) {
+            if (group == null) return NO_GROUP;
+
+            Integer id = ids.get(group);
+            if (id != null) return id;
+
+            synchronized (GroupIds.class) {
+                id = ids.get(group);
+                if (id == null) {
+                    String[] interned = Arrays.copyOf(names, names.length + 1);
+                    id = names.length;
+                    interned[id] = group;
+                    names = interned;
+                    ids.put(group, id);
+                }
+            }
+            return id;
+        }
+
+        /**
+         * NULL for NO_GROUP
+         */
+        public static String nameOf(int id) {
+            return names[id];
+        }
+    }
+
+    /**
+     * <pre>
+     * immutable set of permission groups, a bitset of GroupIds
+     * union() and intersect() are word-wise, iterating by id allocates nothing:
+        for (int id = groupSet.first(); id != -1; id = groupSet.next(id)) {
+            String permissionGroup = MyPermissions.GroupIds.nameOf(id);
+        }
+     * </pre>
+     */
+    public static class GroupSet implements Iterable<String> {
+        public static final GroupSet EMPTY = new GroupSet(new long[0]);
+
+        private final long[] words;
+
+        private GroupSet(long[] words) {
+            this.words = words;
+        }
+
+        public static GroupSet of(Collection<String> groups) {
+            if (groups == null || groups.isEmpty()) return EMPTY;
+
+            Builder builder = new Builder();
+            for (String group : groups) {
+                builder.add(group);
+            }
+            return builder.build();
+        }
+
+        public boolean contains(String group) {
+            return containsId(GroupIds.idOf(group));
+        }
+
+        public boolean containsId(int id) {
+            int word = id >>> 6;
+            return word < words.length && (words[word] & (1L << id)) != 0;
+        }
+
+        public boolean isEmpty() {
+            return words.length == 0;
+        }
+
+        public int size() {
+            int size = 0;
+            for (long word : words) {
+                size += Long.bitCount(word);
+            }
+            return size;
+        }
+
+        /**
+         * lowest id, -1 if empty
+         */
+        public int first() {
+            return next(-1);
+        }
+
+        /**
+         * next id after id, -1 if none
+         */
+        public int next(int id) {
+            int from = id + 1;
+            int word = from >>> 6;
+            if (word >= words.length) return -1;
+
+            long bits = words[word] & (-1L << from);
+            while (true) {
+                if (bits != 0) {
+                    return (word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+                if (++word >= words.length) return -1;
+                bits = words[word];
+            }
+        }
+
+        public GroupSet union(@NonNull GroupSet other) {
+            if (other.words.length == 0) return this;
+            if (words.length == 0) return other;
+
+            long[] longer = words.length >= other.words.length ? words : other.words;
+            long[] shorter = longer == words ? other.words : words;
+            long[] union = longer.clone();
+            for (int i = 0; i < shorter.length; i++) {
+                union[i] |= shorter[i];
+            }
+            return new GroupSet(union);
+        }
+
+        public GroupSet intersect(@NonNull GroupSet other) {
+            long[] intersection = new long[Math.min(words.length, other.words.length)];
+            for (int i = 0; i < intersection.length; i++) {
+                intersection[i] = words[i] & other.words[i];
+            }
+            return trimmed(intersection);
+        }
+
+        /**
+         * group short-names, by id order
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int id = first();
+
+                @Override
+                public boolean hasNext() {
+                    return id != -1;
+                }
+
+                @Override
+                public String next() {
+                    if (id == -1) throw new NoSuchElementException();
+                    String group = GroupIds.nameOf(id);
+                    id = GroupSet.this.next(id);
+                    return group;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupSet && Arrays.equals(words, ((GroupSet) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder stringBuilder = new StringBuilder("[");
+            for (int id = first(); id != -1; id = next(id)) {
+                if (stringBuilder.length() > 1) {
+                    stringBuilder.append(", ");
+                }
+                stringBuilder.append(GroupIds.nameOf(id));
+            }
+            return stringBuilder.append(']').toString();
+        }
+
+        // trailing zero words dropped, so equal sets have equal words
+        private static GroupSet trimmed(long[] words) {
+            int length = words.length;
+            while (length > 0 && words[length - 1] == 0) {
+                length--;
+            }
+            if (length == 0) return EMPTY;
+            return new GroupSet(length == words.length ? words : Arrays.copyOf(words, length));
+        }
+
+        public static class Builder {
+            private long[] words = new long[1];
+
+            public Builder add(String group) {
+                int id = GroupIds.idOf(group);
+                int word = id >>> 6;
+                if (word >= words.length) {
+                    words = Arrays.copyOf(words, word + 1);
+                }
+                words[word] |= 1L << id;
+                return this;
+            }
+
+            public GroupSet build() {
+                return trimmed(words.clone());
+            }
+        }
+    }
+
+    /**
+     * warning of denied permissions based on level of deny
      */
     public static void warnPermissions(@NonNull final Activity activity,
                                        Set<String> permissionsDisabled) {
+        MyPermissions.warnPermissionGroups(activity, GroupSet.of(permissionsDisabled));
+    }
+
+    /**
+     * warning of denied permissions based on level of deny
+     * <br>named apart from warnPermissions(), so warnPermissions(activity, null) stays unambiguous
+     * @param permissionsDisabled e.g. PermissionsDenyResult.getDontAskAgain()
+     */
+    public static void warnPermissionGroups(@NonNull final Activity activity,
+                                            GroupSet permissionsDisabled) {
         if (permissionsDisabled == null || permissionsDisabled.isEmpty()) {
             // none Don't Ask Again, so a simple warning
             String message = "permission(s) were NOT granted";
@@ -508,8 +1767,8 @@ public class MyPermissions {
         }
 
         StringBuilder permissionsDontAsked = new StringBuilder("");
-        for (String permissionGroup : permissionsDisabled) {
-            permissionsDontAsked.append("-").append(permissionGroup).append("\n");
+        for (int id = permissionsDisabled.first(); id != -1; id = permissionsDisabled.next(id)) {
+            permissionsDontAsked.append("-").append(GroupIds.nameOf(id)).append("\n");
         }
 
         permissionsDontAsked.insert(0, "There are disabled Permissions:\n")
@@ -521,6 +1780,240 @@ public class MyPermissions {
         dialog.show(fm, "warning");
     }
 
+    /**
+     * TRUE if granted, from PermissionMonitor's snapshot
+     * <br>only the first check of a permission asks the PackageManager, for hot paths
+     */
+    public static boolean isGranted(@NonNull Context context, @NonNull String permission) {
+        return PermissionMonitor.getDefault().isGranted(context, permission);
+    }
+
+    /**
+     * grant state of the tracked permissions, immutable
+     */
+    public static class PermissionSnapshot {
+        public static final PermissionSnapshot EMPTY = new PermissionSnapshot(
+                Collections.<String, Integer>emptyMap(), new long[0]);
+
+        private final Map<String, Integer> indexes;
+        private final long[] granted;
+
+        private PermissionSnapshot(Map<String, Integer> indexes, long[] granted) {
+            this.indexes = indexes;
+            this.granted = granted;
+        }
+
+        public boolean isTracked(@NonNull String permission) {
+            return indexes.containsKey(permission);
+        }
+
+        /**
+         * FALSE if not granted or not tracked
+         */
+        public boolean isGranted(@NonNull String permission) {
+            Integer index = indexes.get(permission);
+            return index != null && (granted[index >>> 6] & (1L << index)) != 0;
+        }
+
+        public int size() {
+            return indexes.size();
+        }
+
+        /**
+         * copy with permissions set to granted (tracking new ones), this if nothing changes
+         * @param flipped gets the permissions whose state changed
+         */
+        private PermissionSnapshot with(String[] permissions, boolean[] grantedStates, List<String> flipped) {
+            Map<String, Integer> newIndexes = null;
+            long[] newGranted = null;
+
+            for (int i = 0; i < permissions.length; i++) {
+                String permission = permissions[i];
+                if (TextUtils.isEmpty(permission)) continue;
+
+                Map<String, Integer> currentIndexes = newIndexes != null ? newIndexes : indexes;
+                Integer index = currentIndexes.get(permission);
+                if (index == null) {
+                    if (newIndexes == null) {
+                        newIndexes = new HashMap<>(indexes);
+                    }
+                    index = newIndexes.size();
+                    newIndexes.put(permission, index);
+                } else if (isGranted(newGranted != null ? newGranted : granted, index) == grantedStates[i]) {
+                    continue;
+                } else {
+                    flipped.add(permission);
+                }
+
+                if (newGranted == null || (index >>> 6) >= newGranted.length) {
+                    long[] current = newGranted != null ? newGranted : granted;
+                    newGranted = Arrays.copyOf(current, Math.max(current.length, (index >>> 6) + 1));
+                }
+                if (grantedStates[i]) {
+                    newGranted[index >>> 6] |= 1L << index;
+                } else {
+                    newGranted[index >>> 6] &= ~(1L << index);
+                }
+            }
+
+            if (newIndexes == null && newGranted == null) return this;
+            return new PermissionSnapshot(newIndexes != null ? newIndexes : indexes,
+                    newGranted != null ? newGranted : granted);
+        }
+
+        private static boolean isGranted(long[] granted, int index) {
+            return (index >>> 6) < granted.length && (granted[index >>> 6] & (1L << index)) != 0;
+        }
+    }
+
+    /**
+     * <pre>
+     * process-wide PermissionSnapshot, swapped atomically, read with one volatile read
+     * (no IPC, no logging) instead of checkSelfPermission() polling
+     * refreshed in one batch: refresh() (install() does it on every activity onResume(),
+     * which covers coming back from applicationSettings()), and from permissionsDenied()
+     * and request() results without asking the PackageManager
+     * listeners are only told about permissions that flipped, on the refreshing thread:
+        MyPermissions.PermissionMonitor.getDefault().install(getApplication());
+        MyPermissions.PermissionMonitor.getDefault().addListener(listener);
+        if (MyPermissions.isGranted(context, Manifest.permission.CAMERA)) { ... }
+     * </pre>
+     */
+    public static class PermissionMonitor {
+        private static final PermissionMonitor DEFAULT = new PermissionMonitor();
+
+        private final AtomicReference<PermissionSnapshot> snapshot = new AtomicReference<>(PermissionSnapshot.EMPTY);
+        private final List<PermissionListener> listeners = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean installed = new AtomicBoolean();
+
+        public interface PermissionListener {
+            void onPermissionChanged(@NonNull String permission, boolean granted);
+        }
+
+        private PermissionMonitor() {
+        }
+
+        public static PermissionMonitor getDefault() {
+            return DEFAULT;
+        }
+
+        public PermissionSnapshot getSnapshot() {
+            return snapshot.get();
+        }
+
+        /**
+         * snapshot read, a permission not tracked yet is checked once and tracked from then on
+         */
+        public boolean isGranted(@NonNull Context context, @NonNull String permission) {
+            PermissionSnapshot current = snapshot.get();
+            if (current.isTracked(permission)) {
+                return current.isGranted(permission);
+            }
+            track(context, permission);
+            return snapshot.get().isGranted(permission);
+        }
+
+        /**
+         * starts tracking permissions, checking them now
+         */
+        public void track(@NonNull Context context, @NonNull String... permissions) {
+            boolean[] grantedStates = new boolean[permissions.length];
+            for (int i = 0; i < permissions.length; i++) {
+                grantedStates[i] = !TextUtils.isEmpty(permissions[i])
+                        && ContextCompat.checkSelfPermission(context, permissions[i]) == PackageManager.PERMISSION_GRANTED;
+            }
+            swap(permissions, grantedStates);
+        }
+
+        /**
+         * re-checks every tracked permission in one batch
+         */
+        public void refresh(@NonNull Context context) {
+            Set<String> tracked = snapshot.get().indexes.keySet();
+            if (tracked.isEmpty()) return;
+
+            track(context, tracked.toArray(new String[tracked.size()]));
+        }
+
+        /**
+         * refresh() on every activity onResume()
+         */
+        public void install(@NonNull Application application) {
+            if (!installed.compareAndSet(false, true)) return;
+
+            application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityResumed(Activity activity) {
+                    refresh(activity);
+                }
+
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                }
+
+                @Override
+                public void onActivityStarted(Activity activity) {
+                }
+
+                @Override
+                public void onActivityPaused(Activity activity) {
+                }
+
+                @Override
+                public void onActivityStopped(Activity activity) {
+                }
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+                }
+
+                @Override
+                public void onActivityDestroyed(Activity activity) {
+                }
+            });
+        }
+
+        public void addListener(@NonNull PermissionListener listener) {
+            listeners.add(listener);
+        }
+
+        public void removeListener(@NonNull PermissionListener listener) {
+            listeners.remove(listener);
+        }
+
+        /**
+         * from request results, no PackageManager involved
+         */
+        void update(String[] permissions, int[] grantResults) {
+            boolean[] grantedStates = new boolean[permissions.length];
+            for (int i = 0; i < permissions.length; i++) {
+                grantedStates[i] = grantResults[i] == PackageManager.PERMISSION_GRANTED;
+            }
+            swap(permissions, grantedStates);
+        }
+
+        private void swap(String[] permissions, boolean[] grantedStates) {
+            List<String> flipped = new ArrayList<>(0);
+            PermissionSnapshot current;
+            PermissionSnapshot updated;
+            do {
+                flipped.clear();
+                current = snapshot.get();
+                updated = current.with(permissions, grantedStates, flipped);
+            } while (updated != current && !snapshot.compareAndSet(current, updated));
+
+            for (String permission : flipped) {
+                boolean granted = updated.isGranted(permission);
+                if (MyLog.ENABLED && MyLog.isLoggable(MyLog.DEBUG)) {
+                    MyLog.d(TAG, "flipped {} Granted:{}", getPermissionName(permission), granted);
+                }
+                for (PermissionListener listener : listeners) {
+                    listener.onPermissionChanged(permission, granted);
+                }
+            }
+        }
+    }
+
     /**
      * intent to go to application's settings
      */
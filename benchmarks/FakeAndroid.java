@@ -0,0 +1,184 @@
+package com.samp.ling.sampleapp.utils.bench;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <pre>
+ * in-process stand-ins for the Android objects MyPermissions talks to, for MyPermissionsBenchmark
+ * every call that is a binder round trip on a device (checkPermission,
+ * shouldShowRequestPermissionRationale, getPermissionInfo, getPackageInfo) spins for ipcNanos
+ * </pre>
+ */
+final class FakeAndroid {
+
+    private FakeAndroid() {
+    }
+
+    /**
+     * busy-waits, so the simulated IPC shows up as time on the calling thread like a binder call
+     */
+    static void ipc(long nanos) {
+        if (nanos <= 0) return;
+
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos) {
+            // spin
+        }
+    }
+
+    static class FakeActivity extends Activity {
+        private final Set<String> granted = new HashSet<>();
+        private final Set<String> rationale = new HashSet<>();
+        private final FakePackageManager packageManager;
+        private final FakeSharedPreferences sharedPreferences = new FakeSharedPreferences();
+        private final File filesDir;
+        private final long ipcNanos;
+        int requestCount;
+
+        FakeActivity(File filesDir, long ipcNanos) {
+            this.filesDir = filesDir;
+            this.ipcNanos = ipcNanos;
+            this.packageManager = new FakePackageManager(ipcNanos);
+        }
+
+        void grant(String permission) {
+            granted.add(permission);
+        }
+
+        void rationale(String permission) {
+            rationale.add(permission);
+        }
+
+        FakePackageManager fakePackageManager() {
+            return packageManager;
+        }
+
+        @Override
+        public int checkPermission(String permission, int pid, int uid) {
+            ipc(ipcNanos);
+            return granted.contains(permission) ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+
+        @Override
+        public boolean shouldShowRequestPermissionRationale(String permission) {
+            ipc(ipcNanos);
+            return rationale.contains(permission);
+        }
+
+        @Override
+        public void requestPermissions(String[] permissions, int requestCode) {
+            requestCount++;
+        }
+
+        @Override
+        public SharedPreferences getSharedPreferences(String name, int mode) {
+            return sharedPreferences;
+        }
+
+        @Override
+        public PackageManager getPackageManager() {
+            return packageManager;
+        }
+
+        @Override
+        public String getPackageName() {
+            return "com.samp.ling.sampleapp";
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public File getFilesDir() {
+            return filesDir;
+        }
+    }
+
+    static class FakePackageManager extends PackageManager {
+        private final Map<String, String> groups = new HashMap<>();
+        private final long ipcNanos;
+
+        FakePackageManager(long ipcNanos) {
+            this.ipcNanos = ipcNanos;
+        }
+
+        void declare(String permission, String group) {
+            groups.put(permission, group);
+        }
+
+        @Override
+        public PermissionInfo getPermissionInfo(String name, int flags) throws NameNotFoundException {
+            ipc(ipcNanos);
+            if (!groups.containsKey(name)) throw new NameNotFoundException();
+
+            PermissionInfo permissionInfo = new PermissionInfo();
+            permissionInfo.group = groups.get(name);
+            permissionInfo.protectionLevel = PermissionInfo.PROTECTION_DANGEROUS;
+            return permissionInfo;
+        }
+
+        @Override
+        public PackageInfo getPackageInfo(String packageName, int flags) {
+            ipc(ipcNanos);
+            PackageInfo packageInfo = new PackageInfo();
+            packageInfo.requestedPermissions = groups.keySet().toArray(new String[groups.size()]);
+            return packageInfo;
+        }
+    }
+
+    static class FakeSharedPreferences implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            Object value = values.get(key);
+            return value != null ? (Boolean) value : defValue;
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public Editor edit() {
+            return new Editor() {
+                private final Map<String, Object> changes = new HashMap<>();
+                private boolean clear;
+
+                @Override
+                public Editor putBoolean(String key, boolean value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor clear() {
+                    clear = true;
+                    return this;
+                }
+
+                @Override
+                public void apply() {
+                    if (clear) {
+                        values.clear();
+                    }
+                    values.putAll(changes);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.samp.ling.sampleapp.utils.bench;
+
+import com.samp.ling.sampleapp.utils.MyNetProbe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * MyNetProbe.ProbeEngine against in-process loopback stand-in servers,
+ * one listener (port) per URL so neither in-flight coalescing nor caching hides a probe
+ *
+ * check:         checks/s, plus "probes" (probes/s) from ProbeCounters
+ * checkLatency:  per check p50/p99 (SampleTime percentiles)
+ * allocation:    run with -prof gc, gc.alloc.rate.norm / urlCount = bytes per probe
+ *
+ * built by benchmarks/pom.xml (JMH plus MyNetProbe from the parent directory):
+ * mvn -B package
+ * java -jar target/benchmarks.jar MyNetProbeBenchmark -prof gc -p behavior=FAST,REFUSED -p mode=HEAD
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MyNetProbeBenchmark {
+    static final int SLOW_HEADERS_MILLIS = 50;
+    static final int CONNECT_TIMEOUT_MILLIS = 200;
+    static final int READ_TIMEOUT_MILLIS = 200;
+    static final long DEADLINE_MILLIS = 2000;
+    static final int BLACKHOLE_MAX_FILLERS = 64;
+    static final int BLACKHOLE_FILL_TIMEOUT_MILLIS = 100;
+
+    /**
+     * FAST: 200 right away
+     * SLOW_HEADERS: 200 after SLOW_HEADERS_MILLIS
+     * REFUSED: nothing listening
+     * BLACKHOLE: nothing accepted, the listener's backlog is kept full so connects never
+     * complete (every mode hits the connect timeout)
+     */
+    public enum Behavior {
+        FAST, SLOW_HEADERS, REFUSED, BLACKHOLE
+    }
+
+    @Param({"FAST", "SLOW_HEADERS", "REFUSED", "BLACKHOLE"})
+    public Behavior behavior;
+
+    @Param({"HEAD", "TCP", "NIO"})
+    public MyNetProbe.ProbeMode mode;
+
+    @Param({"1", "10", "50"})
+    public int urlCount;
+
+    @Param({"1", "8", "32"})
+    public int concurrency;
+
+    private StandInServers servers;
+    private ExecutorService executor;
+    private MyNetProbe.ProbeEngine probeEngine;
+    private String[] urls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        servers = new StandInServers(behavior, urlCount);
+        urls = servers.urls();
+        executor = Executors.newCachedThreadPool();
+        probeEngine = new MyNetProbe.ProbeEngine(concurrency, DEADLINE_MILLIS, mode,
+                CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS, null, executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        servers.close();
+    }
+
+    @Benchmark
+    public List<MyNetProbe.UrlResult> check(ProbeCounters probeCounters) {
+        List<MyNetProbe.UrlResult> urlResults = probeEngine.check(urls);
+        probeCounters.probes += urlResults.size();
+        return urlResults;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<MyNetProbe.UrlResult> checkLatency() {
+        return probeEngine.check(urls);
+    }
+
+    /**
+     * probes/s next to checks/s
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ProbeCounters {
+        public long probes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            probes = 0;
+        }
+    }
+
+    /**
+     * urlCount loopback listeners showing one Behavior
+     */
+    static class StandInServers implements Closeable {
+        private final List<Closeable> closeables = new ArrayList<>();
+        private final List<String> urls = new ArrayList<>();
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        StandInServers(Behavior behavior, int urlCount) throws IOException {
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            try {
+                for (int i = 0; i < urlCount; i++) {
+                    int port;
+                    switch (behavior) {
+                        case FAST:
+                            port = http(loopback, 0);
+                            break;
+                        case SLOW_HEADERS:
+                            port = http(loopback, SLOW_HEADERS_MILLIS);
+                            break;
+                        case REFUSED:
+                            port = refused(loopback);
+                            break;
+                        default:
+                            port = blackhole(loopback);
+                            break;
+                    }
+                    urls.add("http://" + loopback.getHostAddress() + ":" + port + "/");
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        String[] urls() {
+            return urls.toArray(new String[urls.size()]);
+        }
+
+        private int http(InetAddress loopback, final int delayMillis) throws IOException {
+            final HttpServer server = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+            server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    if (delayMillis > 0) {
+                        try {
+                            Thread.sleep(delayMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                }
+            });
+            server.setExecutor(executor);
+            server.start();
+            closeables.add(new Closeable() {
+                @Override
+                public void close() {
+                    server.stop(0);
+                }
+            });
+            return server.getAddress().getPort();
+        }
+
+        private static int refused(InetAddress loopback) throws IOException {
+            // a port that was just free, nothing listens on it anymore
+            ServerSocket serverSocket = new ServerSocket(0, 1, loopback);
+            int port = serverSocket.getLocalPort();
+            serverSocket.close();
+            return port;
+        }
+
+        /**
+         * never calls accept(), connects of its own fill the backlog until one no longer
+         * completes, from then on the kernel drops every SYN and connects just hang
+         */
+        private int blackhole(InetAddress loopback) throws IOException {
+            ServerSocket serverSocket = new ServerSocket(0, 1, loopback);
+            closeables.add(serverSocket);
+            InetSocketAddress address = new InetSocketAddress(loopback, serverSocket.getLocalPort());
+            for (int i = 0; i < BLACKHOLE_MAX_FILLERS; i++) {
+                Socket filler = new Socket();
+                closeables.add(filler);
+                try {
+                    filler.connect(address, BLACKHOLE_FILL_TIMEOUT_MILLIS);
+                } catch (SocketTimeoutException e) {
+                    return serverSocket.getLocalPort();
+                }
+            }
+            throw new IOException("backlog never filled up: " + address);
+        }
+
+        @Override
+        public void close() {
+            for (Closeable closeable : closeables) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            closeables.clear();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.samp.ling.sampleapp.utils.bench;
+
+import android.content.pm.PackageManager;
+
+import com.samp.ling.sampleapp.utils.MyPermissions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * MyPermissions decision path on a plain JVM, against FakeAndroid stand-ins
+ * (Context, Activity, PackageManager, SharedPreferences) with simulated IPC latency
+ *
+ * checkPermissions:     the whole pre-request path, up to the (fake) system request
+ * resolvePermissions:   BEFORE states, first-time flags
+ * permissionsDenied:    onRequestPermissionsResult() path, AFTER states and groups
+ * checkSelfPermission / isGranted: one IPC (plus log) per permission vs the snapshot read
+ * allocation:           run with -prof gc, gc.alloc.rate.norm = bytes per call
+ *
+ * built by benchmarks/pom.xml with benchmarks/stubs (JVM stand-ins for the Android classes,
+ * never part of the app) instead of android.jar:
+ * mvn -B package
+ * java -jar target/benchmarks.jar MyPermissionsBenchmark -prof gc -p ipcNanos=0
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MyPermissionsBenchmark {
+    static final int REQUEST_CODE = 1;
+    static final int GROUPS = 8;
+
+    /**
+     * NONE: nothing granted yet, half of them deniable again (rationale)
+     * HALF: every other permission granted
+     * ALL: everything granted
+     */
+    public enum Grants {
+        NONE, HALF, ALL
+    }
+
+    @Param({"1", "5", "10", "30"})
+    public int permissionCount;
+
+    @Param({"0", "20000"})
+    public long ipcNanos;
+
+    @Param({"NONE", "HALF", "ALL"})
+    public Grants grants;
+
+    private File filesDir;
+    private FakeAndroid.FakeActivity activity;
+    private String[] permissions;
+    private int[] grantResults;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        filesDir = Files.createTempDirectory("MyPermissionsBenchmark").toFile();
+        activity = new FakeAndroid.FakeActivity(filesDir, ipcNanos);
+        permissions = new String[permissionCount];
+        grantResults = new int[permissionCount];
+        for (int i = 0; i < permissionCount; i++) {
+            String permission = "android.permission.BENCH_" + i;
+            permissions[i] = permission;
+            activity.fakePackageManager().declare(permission, "android.permission-group.BENCH_" + (i % GROUPS));
+
+            boolean granted = grants == Grants.ALL || (grants == Grants.HALF && i % 2 == 0);
+            if (granted) {
+                activity.grant(permission);
+            } else if (i % 2 == 1) {
+                activity.rationale(permission);
+            }
+            grantResults[i] = granted ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = filesDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        filesDir.delete();
+    }
+
+    @Benchmark
+    public int checkPermissions() {
+        MyPermissions.checkPermissions(activity, permissions, REQUEST_CODE);
+        return activity.requestCount;
+    }
+
+    @Benchmark
+    public MyPermissions.PermissionStates resolvePermissions() {
+        return MyPermissions.resolvePermissions(activity, permissions);
+    }
+
+    @Benchmark
+    public MyPermissions.PermissionsDenyResult permissionsDenied() {
+        return MyPermissions.permissionsDenied(activity, permissions, grantResults);
+    }
+
+    @Benchmark
+    public int checkSelfPermission() {
+        int granted = 0;
+        for (String permission : permissions) {
+            if (MyPermissions.checkSelfPermission(activity, permission)) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+
+    @Benchmark
+    public int isGranted() {
+        int granted = 0;
+        for (String permission : permissions) {
+            if (MyPermissions.isGranted(activity, permission)) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+}
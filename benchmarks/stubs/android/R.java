@@ -0,0 +1,8 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android;
+
+public final class R {
+    public static final class id {
+        public static final int content = 0x01020002;
+    }
+}
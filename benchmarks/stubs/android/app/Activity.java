@@ -0,0 +1,31 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.view.View;
+
+public abstract class Activity extends Context {
+
+    public boolean shouldShowRequestPermissionRationale(String permission) {
+        return false;
+    }
+
+    public void requestPermissions(String[] permissions, int requestCode) {
+    }
+
+    public FragmentManager getFragmentManager() {
+        return new FragmentManager();
+    }
+
+    public View findViewById(int id) {
+        return new View();
+    }
+
+    public void startActivity(Intent intent) {
+    }
+
+    public boolean isFinishing() {
+        return false;
+    }
+}
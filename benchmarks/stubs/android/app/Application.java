@@ -0,0 +1,27 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+public abstract class Application extends Context {
+
+    public interface ActivityLifecycleCallbacks {
+        void onActivityCreated(Activity activity, Bundle savedInstanceState);
+
+        void onActivityStarted(Activity activity);
+
+        void onActivityResumed(Activity activity);
+
+        void onActivityPaused(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity, Bundle outState);
+
+        void onActivityDestroyed(Activity activity);
+    }
+
+    public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+    }
+}
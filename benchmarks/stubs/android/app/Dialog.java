@@ -0,0 +1,18 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.app;
+
+import android.content.DialogInterface;
+
+public class Dialog implements DialogInterface {
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public void dismiss() {
+    }
+
+    public void show() {
+    }
+}
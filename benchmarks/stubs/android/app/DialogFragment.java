@@ -0,0 +1,33 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.app;
+
+import android.os.Bundle;
+
+public class DialogFragment {
+    private Bundle arguments;
+
+    public void setCancelable(boolean cancelable) {
+    }
+
+    public void setArguments(Bundle arguments) {
+        this.arguments = arguments;
+    }
+
+    public Bundle getArguments() {
+        return arguments;
+    }
+
+    public Activity getActivity() {
+        return null;
+    }
+
+    public void dismiss() {
+    }
+
+    public void show(FragmentManager manager, String tag) {
+    }
+
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        return null;
+    }
+}
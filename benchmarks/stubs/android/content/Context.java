@@ -0,0 +1,22 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content;
+
+import android.content.pm.PackageManager;
+
+import java.io.File;
+
+public abstract class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract String getPackageName();
+
+    public abstract Context getApplicationContext();
+
+    public abstract File getFilesDir();
+
+    public abstract int checkPermission(String permission, int pid, int uid);
+}
@@ -0,0 +1,12 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content;
+
+public interface DialogInterface {
+    void cancel();
+
+    void dismiss();
+
+    interface OnClickListener {
+        void onClick(DialogInterface dialog, int which);
+    }
+}
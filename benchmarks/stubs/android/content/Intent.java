@@ -0,0 +1,32 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.net.Uri;
+
+public class Intent {
+    public static final String CATEGORY_DEFAULT = "android.intent.category.DEFAULT";
+    public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+    public static final int FLAG_ACTIVITY_NO_HISTORY = 0x40000000;
+    public static final int FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS = 0x00800000;
+
+    public Intent setAction(String action) {
+        return this;
+    }
+
+    public Intent addCategory(String category) {
+        return this;
+    }
+
+    public Intent addFlags(int flags) {
+        return this;
+    }
+
+    public Intent setData(Uri data) {
+        return this;
+    }
+
+    public ComponentName resolveActivity(PackageManager packageManager) {
+        return null;
+    }
+}
@@ -0,0 +1,20 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content;
+
+import java.util.Map;
+
+public interface SharedPreferences {
+    boolean getBoolean(String key, boolean defValue);
+
+    Map<String, ?> getAll();
+
+    Editor edit();
+
+    interface Editor {
+        Editor putBoolean(String key, boolean value);
+
+        Editor clear();
+
+        void apply();
+    }
+}
@@ -0,0 +1,6 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content.pm;
+
+public class PackageInfo {
+    public String[] requestedPermissions;
+}
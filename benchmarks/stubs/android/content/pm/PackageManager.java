@@ -0,0 +1,15 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content.pm;
+
+public abstract class PackageManager {
+    public static final int PERMISSION_GRANTED = 0;
+    public static final int PERMISSION_DENIED = -1;
+    public static final int GET_PERMISSIONS = 0x00001000;
+
+    public abstract PermissionInfo getPermissionInfo(String name, int flags) throws NameNotFoundException;
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public static class NameNotFoundException extends Exception {
+    }
+}
@@ -0,0 +1,11 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.content.pm;
+
+public class PermissionInfo {
+    public static final int PROTECTION_NORMAL = 0;
+    public static final int PROTECTION_DANGEROUS = 1;
+    public static final int PROTECTION_MASK_BASE = 0xf;
+
+    public String group;
+    public int protectionLevel;
+}
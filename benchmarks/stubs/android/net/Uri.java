@@ -0,0 +1,9 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.net;
+
+public class Uri {
+
+    public static Uri fromParts(String scheme, String ssp, String fragment) {
+        return new Uri();
+    }
+}
@@ -0,0 +1,34 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Bundle {
+    private final Map<String, Object> values = new HashMap<>();
+
+    public void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+    public void putStringArray(String key, String[] value) {
+        values.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        values.put(key, value);
+    }
+
+    public String getString(String key) {
+        return (String) values.get(key);
+    }
+
+    public String[] getStringArray(String key) {
+        return (String[]) values.get(key);
+    }
+
+    public int getInt(String key) {
+        Object value = values.get(key);
+        return value != null ? (Integer) value : 0;
+    }
+}
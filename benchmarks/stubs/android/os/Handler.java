@@ -0,0 +1,16 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.os;
+
+/**
+ * runs posted work right away, on the posting thread
+ */
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable runnable) {
+        runnable.run();
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.os;
+
+public final class Looper {
+
+    public static Looper getMainLooper() {
+        return null;
+    }
+}
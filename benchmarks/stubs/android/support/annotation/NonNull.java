@@ -0,0 +1,5 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.support.annotation;
+
+public @interface NonNull {
+}
@@ -0,0 +1,15 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.support.design.widget;
+
+import android.view.View;
+
+public class Snackbar {
+    public static final int LENGTH_LONG = 0;
+
+    public static Snackbar make(View view, CharSequence text, int duration) {
+        return new Snackbar();
+    }
+
+    public void show() {
+    }
+}
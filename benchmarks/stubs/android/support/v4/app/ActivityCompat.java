@@ -0,0 +1,15 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.support.v4.app;
+
+import android.app.Activity;
+
+public class ActivityCompat {
+
+    public static boolean shouldShowRequestPermissionRationale(Activity activity, String permission) {
+        return activity.shouldShowRequestPermissionRationale(permission);
+    }
+
+    public static void requestPermissions(Activity activity, String[] permissions, int requestCode) {
+        activity.requestPermissions(permissions, requestCode);
+    }
+}
@@ -0,0 +1,11 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.support.v4.content;
+
+import android.content.Context;
+
+public class ContextCompat {
+
+    public static int checkSelfPermission(Context context, String permission) {
+        return context.checkPermission(permission, 0, 0);
+    }
+}
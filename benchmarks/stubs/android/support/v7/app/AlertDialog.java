@@ -0,0 +1,31 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.support.v7.app;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+
+public class AlertDialog extends Dialog {
+
+    public static class Builder {
+
+        public Builder(Context context) {
+        }
+
+        public Builder setMessage(CharSequence message) {
+            return this;
+        }
+
+        public Builder setPositiveButton(CharSequence text, DialogInterface.OnClickListener listener) {
+            return this;
+        }
+
+        public Builder setNeutralButton(CharSequence text, DialogInterface.OnClickListener listener) {
+            return this;
+        }
+
+        public AlertDialog create() {
+            return new AlertDialog();
+        }
+    }
+}
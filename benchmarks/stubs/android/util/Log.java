@@ -0,0 +1,31 @@
+// JVM stand-in for the Android class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package android.util;
+
+/**
+ * consumes messages without printing them, so building them still costs what it does on a device
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static volatile int sink;
+
+    public static int println(int priority, String tag, String msg) {
+        return sink += msg.length();
+    }
+
+    public static int d(String tag, String msg) {
+        return sink += msg.length();
+    }
+
+    public static int i(String tag, String msg) {
+        return sink += msg.length();
+    }
+
+    public static int w(String tag, String msg) {
+        return sink += msg.length();
+    }
+}
@@ -0,0 +1,9 @@
+// JVM stand-in for the app's generated class of the same name, benchmarks only (see MyPermissionsBenchmark)
+package com.samp.ling.sampleapp;
+
+/**
+ * debug, so the benchmarks measure MyLog with logging on
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = true;
+}